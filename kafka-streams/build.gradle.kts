@@ -30,12 +30,15 @@ dependencies {
     // Jackson for JSON in query service
     implementation("com.fasterxml.jackson.core:jackson-databind:2.16.1")
 
+    // Embedded SQLite for the optional in-process flights SQL sink
+    implementation("org.xerial:sqlite-jdbc:3.46.1.3")
+
     // Testing dependencies
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.1")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.1")
 
     // Kafka Streams Test Utils
-    testImplementation("org.apache.kafka:kafka-streams-test-utils:3.9.1")
+    testImplementation("org.apache.kafka:kafka-streams-test-utils:4.1.0")
 
     // Schema Registry client provides MockSchemaRegistryClient used by mock:// URL in tests
     testImplementation("io.confluent:kafka-schema-registry-client:7.9.1")
@@ -47,8 +50,31 @@ application {
 }
 
 tasks.named<Test>("test") {
-    // Use JUnit Platform for unit tests.
-    useJUnitPlatform()
+    // Use JUnit Platform for unit tests; soak tests only run via soakTest.
+    useJUnitPlatform {
+        excludeTags("soak")
+    }
+}
+
+// Offline throughput / state-size regression suite on TopologyTestDriver (no broker needed).
+// ./gradlew soakTest [-Psoak.records=20000] [-Psoak.tolerance=0.2] [-Psoak.stateDir=/dev/shm/soak]
+tasks.register<Test>("soakTest") {
+    description = "Pushes synthetic records through the topologies and checks stored baselines."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("soak")
+    }
+    maxHeapSize = "1g"
+    systemProperty("soak.records", (project.findProperty("soak.records") ?: "20000").toString())
+    systemProperty("soak.tolerance", (project.findProperty("soak.tolerance") ?: "0.2").toString())
+    systemProperty("soak.resultsDir", layout.buildDirectory.dir("soak").get().asFile.absolutePath)
+    project.findProperty("soak.stateDir")?.let { systemProperty("soak.stateDir", it.toString()) }
+    outputs.upToDateWhen { false }
+    testLogging {
+        showStandardStreams = true
+    }
 }
 
 dockerCompose {
@@ -0,0 +1,83 @@
+package dev.gamov.query.kafka;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HyperLogLog over fixed-size byte arrays.
+ * <p>
+ * A sketch is {@link #SIZE} bytes, one 6-bit register value per byte
+ * (precision 13, ~1.15% standard error). Sketches are plain byte[] so they can
+ * be stored with Serdes.ByteArray() and updated in place without copying;
+ * two sketches merge by taking the per-register maximum.
+ */
+public final class HyperLogLog {
+
+  public static final int PRECISION = 13;
+  public static final int SIZE = 1 << PRECISION;
+
+  private static final double ALPHA = 0.7213 / (1 + 1.079 / SIZE);
+
+  private HyperLogLog() {}
+
+  public static byte[] newSketch() {
+    return new byte[SIZE];
+  }
+
+  /**
+   * Add an item to the sketch in place.
+   * @return true if a register changed (the sketch needs to be written back)
+   */
+  public static boolean add(byte[] sketch, String item) {
+    long hash = hash(item);
+    int index = (int) (hash >>> (64 - PRECISION));
+    // Rank of the first 1-bit in the remaining 64 - PRECISION bits
+    long rest = hash << PRECISION;
+    byte rank = (byte) (rest == 0 ? 64 - PRECISION + 1 : Long.numberOfLeadingZeros(rest) + 1);
+    if (rank > sketch[index]) {
+      sketch[index] = rank;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Merge {@code other} into {@code target} in place.
+   */
+  public static void merge(byte[] target, byte[] other) {
+    for (int i = 0; i < SIZE; i++) {
+      if (other[i] > target[i]) target[i] = other[i];
+    }
+  }
+
+  public static long estimate(byte[] sketch) {
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : sketch) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) zeros++;
+    }
+    double estimate = ALPHA * SIZE * SIZE / sum;
+    // Small-range correction: linear counting while many registers are still empty
+    if (estimate <= 2.5 * SIZE && zeros > 0) {
+      estimate = SIZE * Math.log((double) SIZE / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /**
+   * 64-bit FNV-1a over the UTF-8 bytes followed by the MurmurHash3 finalizer for avalanche.
+   */
+  static long hash(String item) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : item.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
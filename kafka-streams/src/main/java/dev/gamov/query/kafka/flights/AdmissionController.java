@@ -0,0 +1,258 @@
+package dev.gamov.query.kafka.flights;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+/**
+ * Admission control for the query HTTP tier.
+ * <p>
+ * Every route belongs to a {@link RouteClass}; each class has its own adaptive
+ * concurrency limit and a bounded FIFO wait queue, so heavy scans can never take the
+ * slots point lookups need. A request that finds the queue full is rejected with
+ * 429 right away; one that waits longer than the class allows gets 503.
+ * <p>
+ * Admitted and queued requests both hold an HTTP thread, so the server's thread pool
+ * must be larger than {@link #maxBlockedThreads()}; otherwise requests pile up in the
+ * server's own queue before any class gets to reject them.
+ * <p>
+ * Limits adapt to observed latency (AIMD): a request slower than the class target
+ * shrinks the limit multiplicatively, a fast one grows it additively. A slow point
+ * lookup while range or full scans are running shrinks the scan limits instead of
+ * its own, so scans are throttled first and point lookups keep their capacity.
+ */
+public class AdmissionController {
+
+  private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  public enum RouteClass {
+    // initial, min, max concurrency, queue size, target latency ms, max queue wait ms
+    POINT(64, 8, 128, 64, 20, 50),
+    RANGE(8, 1, 32, 16, 200, 200),
+    FULL_SCAN(2, 1, 4, 4, 2_000, 500);
+
+    final int initialLimit;
+    final int minLimit;
+    final int maxLimit;
+    final int queueSize;
+    final long targetLatencyMs;
+    final long maxWaitMs;
+
+    RouteClass(int initialLimit, int minLimit, int maxLimit, int queueSize, long targetLatencyMs, long maxWaitMs) {
+      this.initialLimit = initialLimit;
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.queueSize = queueSize;
+      this.targetLatencyMs = targetLatencyMs;
+      this.maxWaitMs = maxWaitMs;
+    }
+  }
+
+  enum Outcome { ADMITTED, QUEUE_FULL, TIMED_OUT }
+
+  private final Map<RouteClass, Limiter> limiters = new EnumMap<>(RouteClass.class);
+
+  public AdmissionController() {
+    for (RouteClass rc : RouteClass.values()) {
+      String prefix = "FLIGHTS_ADMISSION_" + rc.name() + "_";
+      limiters.put(rc, new Limiter(
+          envInt(prefix + "LIMIT", rc.initialLimit),
+          envInt(prefix + "MIN_LIMIT", rc.minLimit),
+          envInt(prefix + "MAX_LIMIT", rc.maxLimit),
+          envInt(prefix + "QUEUE", rc.queueSize),
+          envInt(prefix + "TARGET_MS", (int) rc.targetLatencyMs),
+          envInt(prefix + "MAX_WAIT_MS", (int) rc.maxWaitMs)));
+    }
+  }
+
+  /**
+   * Wrap a handler so it only runs once admitted for the given route class.
+   */
+  public Handler guard(RouteClass routeClass, Handler handler) {
+    return guard(ctx -> routeClass, handler);
+  }
+
+  /**
+   * Wrap a handler whose route class depends on the request (e.g. key range vs full scan).
+   */
+  public Handler guard(Function<Context, RouteClass> classifier, Handler handler) {
+    return ctx -> {
+      RouteClass routeClass = classifier.apply(ctx);
+      Outcome outcome = limiters.get(routeClass).acquire();
+      if (outcome != Outcome.ADMITTED) {
+        boolean queueFull = outcome == Outcome.QUEUE_FULL;
+        logger.debug("Rejected {} request {}: {}", routeClass, ctx.path(), outcome);
+        ctx.status(queueFull ? 429 : 503);
+        ctx.header("Retry-After", "1");
+        ctx.contentType("application/json");
+        ctx.result(MAPPER.writeValueAsString(Map.of(
+            "error", queueFull ? "Too many requests" : "Service overloaded",
+            "routeClass", routeClass.name())));
+        return;
+      }
+      long start = System.nanoTime();
+      try {
+        handler.handle(ctx);
+      } finally {
+        release(routeClass, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    };
+  }
+
+  Limiter limiter(RouteClass routeClass) {
+    return limiters.get(routeClass);
+  }
+
+  /**
+   * Return an admitted slot and feed the latency back into the limits.
+   */
+  void release(RouteClass routeClass, long latencyMs) {
+    Limiter limiter = limiters.get(routeClass);
+    boolean shrinkOwnLimit = true;
+    if (routeClass == RouteClass.POINT && latencyMs > limiter.targetLatencyMs) {
+      // Point lookups are most likely slow because scans compete for RocksDB: back off the scans first
+      shrinkOwnLimit = !throttleScans();
+    }
+    limiter.release(latencyMs, shrinkOwnLimit);
+  }
+
+  private boolean throttleScans() {
+    boolean throttled = false;
+    for (RouteClass rc : new RouteClass[]{RouteClass.FULL_SCAN, RouteClass.RANGE}) {
+      throttled |= limiters.get(rc).backOffIfBusy();
+    }
+    return throttled;
+  }
+
+  /**
+   * Most request threads the guarded routes can hold at once: every class at its
+   * maximum limit with a full wait queue.
+   */
+  public int maxBlockedThreads() {
+    return limiters.values().stream().mapToInt(l -> l.maxLimit + l.queueSize).sum();
+  }
+
+  /**
+   * Current limit, in-flight and queued counts per route class.
+   */
+  public Map<String, Object> stats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    limiters.forEach((rc, l) -> stats.put(rc.name(), l.stats()));
+    return stats;
+  }
+
+  private static int envInt(String key, int def) {
+    String v = System.getenv(key);
+    return (v == null || v.isBlank()) ? def : Integer.parseInt(v.trim());
+  }
+
+  /**
+   * Resizable concurrency limit with a bounded FIFO wait queue: a freed slot goes to the
+   * longest-waiting request, and new arrivals only bypass the queue while it is empty.
+   */
+  static final class Limiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long targetLatencyMs;
+    private final long maxWaitMs;
+
+    private final ArrayDeque<Object> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long rejected;
+
+    Limiter(int initialLimit, int minLimit, int maxLimit, int queueSize, long targetLatencyMs, long maxWaitMs) {
+      this.limit = initialLimit;
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.queueSize = queueSize;
+      this.targetLatencyMs = targetLatencyMs;
+      this.maxWaitMs = maxWaitMs;
+    }
+
+    synchronized Outcome acquire() throws InterruptedException {
+      if (waiters.isEmpty() && inFlight < (int) limit) {
+        inFlight++;
+        return Outcome.ADMITTED;
+      }
+      if (waiters.size() >= queueSize) {
+        rejected++;
+        return Outcome.QUEUE_FULL;
+      }
+      Object ticket = new Object();
+      waiters.addLast(ticket);
+      try {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (waiters.peekFirst() != ticket || inFlight >= (int) limit) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            rejected++;
+            return Outcome.TIMED_OUT;
+          }
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inFlight++;
+        return Outcome.ADMITTED;
+      } finally {
+        waiters.remove(ticket);
+        // The next waiter is now at the head and may find a free slot
+        notifyAll();
+      }
+    }
+
+    synchronized void release(long latencyMs) {
+      release(latencyMs, true);
+    }
+
+    /**
+     * @param mayShrink whether a slow request may shrink this limit (false when another class backed off instead)
+     */
+    synchronized void release(long latencyMs, boolean mayShrink) {
+      inFlight--;
+      if (latencyMs > targetLatencyMs) {
+        if (mayShrink) {
+          limit = Math.max(minLimit, limit * 0.9);
+        }
+      } else {
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+      }
+      notifyAll();
+    }
+
+    /**
+     * Shrink the limit on behalf of another class; only while requests are running
+     * and not below the minimum. Returns whether the limit shrank.
+     */
+    synchronized boolean backOffIfBusy() {
+      if (inFlight == 0 || limit <= minLimit) return false;
+      limit = Math.max(minLimit, limit * 0.9);
+      return true;
+    }
+
+    synchronized int limit() {
+      return (int) limit;
+    }
+
+    synchronized Map<String, Object> stats() {
+      Map<String, Object> s = new LinkedHashMap<>();
+      s.put("limit", (int) limit);
+      s.put("inFlight", inFlight);
+      s.put("queued", waiters.size());
+      s.put("rejected", rejected);
+      return s;
+    }
+  }
+}
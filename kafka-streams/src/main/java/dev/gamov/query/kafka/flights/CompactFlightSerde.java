@@ -0,0 +1,126 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.confluent.developer.models.flight.Flight;
+
+/**
+ * Internal-only Flight serde for state stores, changelogs and repartition topics.
+ * <p>
+ * Layout is one format version byte followed by raw Avro binary (no magic byte,
+ * no schema id), so internal topics never touch Schema Registry. Schema Registry
+ * stays at the external topic boundary only.
+ * <p>
+ * The version is tracked per {@link Format}, i.e. per store or internal topic,
+ * so the flights-store changelog and the repartition topic can change their
+ * layout independently of each other.
+ * <p>
+ * Version 0 is never written: it is the Confluent wire-format magic byte, so
+ * records written before this serde was introduced are handed to the legacy
+ * deserializer and existing stores keep restoring.
+ */
+public class CompactFlightSerde implements Serde<Flight> {
+
+  private static final byte CONFLUENT_MAGIC_BYTE = 0;
+
+  /**
+   * Format of one store or internal topic: the version written now and the writer
+   * schema of every version that may still be read. When Flight evolves, pin the
+   * previous schema under its version and bump the version of the affected formats.
+   */
+  public enum Format {
+    // flights-store and its changelog
+    STORE((byte) 1, Map.of((byte) 1, Flight.getClassSchema())),
+    // flights-store-repartition (flightNumber re-key)
+    REPARTITION((byte) 1, Map.of((byte) 1, Flight.getClassSchema()));
+
+    final byte version;
+    final Map<Byte, Schema> writerSchemas;
+
+    Format(byte version, Map<Byte, Schema> writerSchemas) {
+      this.version = version;
+      this.writerSchemas = writerSchemas;
+    }
+  }
+
+  private final String name;
+  private final byte version;
+  private final SpecificDatumWriter<Flight> writer = new SpecificDatumWriter<>(Flight.class);
+  private final Map<Byte, SpecificDatumReader<Flight>> readers = new HashMap<>();
+  private final Deserializer<Flight> legacy;
+
+  /**
+   * @param format store or topic this serde is used for
+   * @param legacy deserializer for values still in Confluent wire format (may be null)
+   */
+  public CompactFlightSerde(Format format, Deserializer<Flight> legacy) {
+    this(format.name(), format.version, format.writerSchemas, legacy);
+  }
+
+  /**
+   * @param name          format name used in error messages
+   * @param version       version written by the serializer
+   * @param writerSchemas writer schema of every version the deserializer accepts
+   * @param legacy        deserializer for values still in Confluent wire format (may be null)
+   */
+  CompactFlightSerde(String name, byte version, Map<Byte, Schema> writerSchemas, Deserializer<Flight> legacy) {
+    this.name = name;
+    this.version = version;
+    this.legacy = legacy;
+    writerSchemas.forEach((v, schema) ->
+        readers.put(v, new SpecificDatumReader<>(schema, Flight.getClassSchema())));
+  }
+
+  @Override
+  public Serializer<Flight> serializer() {
+    return (topic, flight) -> {
+      if (flight == null) return null;
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(version);
+        BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+        writer.write(flight, encoder);
+        encoder.flush();
+        return out.toByteArray();
+      } catch (IOException e) {
+        throw new SerializationException("Error serializing Flight for " + topic, e);
+      }
+    };
+  }
+
+  @Override
+  public Deserializer<Flight> deserializer() {
+    return (topic, data) -> {
+      if (data == null || data.length == 0) return null;
+      byte dataVersion = data[0];
+      if (dataVersion == CONFLUENT_MAGIC_BYTE && legacy != null) {
+        return legacy.deserialize(topic, data);
+      }
+      SpecificDatumReader<Flight> reader = readers.get(dataVersion);
+      if (reader == null) {
+        throw new SerializationException("Unknown " + name + " Flight format version " + dataVersion + " in " + topic);
+      }
+      try {
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, 1, data.length - 1, null);
+        return reader.read(null, decoder);
+      } catch (IOException e) {
+        throw new SerializationException("Error deserializing Flight from " + topic, e);
+      }
+    };
+  }
+}
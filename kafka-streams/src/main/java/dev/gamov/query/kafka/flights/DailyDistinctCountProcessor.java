@@ -0,0 +1,71 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+
+import java.time.Duration;
+
+import dev.gamov.query.kafka.HyperLogLog;
+
+/**
+ * Maintains one HyperLogLog sketch per key and UTC day in a window store
+ * (key = group, value = item to count distinctly).
+ * <p>
+ * The sketch is updated in place and only written back when a register actually
+ * changes, so repeated updates for already-seen items cost a store read but no
+ * store or changelog write.
+ */
+public class DailyDistinctCountProcessor implements Processor<String, String, Void, Void> {
+
+  static final Duration DAY = Duration.ofDays(1);
+  static final Duration RETENTION = Duration.ofDays(30);
+
+  private final String storeName;
+  private WindowStore<String, byte[]> store;
+
+  public DailyDistinctCountProcessor(String storeName) {
+    this.storeName = storeName;
+  }
+
+  /**
+   * Window store holding one fixed-size sketch per key and day, retained for 30 days.
+   */
+  public static StoreBuilder<WindowStore<String, byte[]>> storeBuilder(String storeName) {
+    return Stores.windowStoreBuilder(
+        Stores.persistentWindowStore(storeName, RETENTION, DAY, false),
+        Serdes.String(),
+        Serdes.ByteArray())
+        // Coalesce sketch writes per key and day until the next commit
+        .withCachingEnabled();
+  }
+
+  /**
+   * Start of the UTC day containing the timestamp (same alignment as epoch-aligned day windows).
+   */
+  public static long dayStart(long timestamp) {
+    return timestamp - Math.floorMod(timestamp, DAY.toMillis());
+  }
+
+  @Override
+  public void init(ProcessorContext<Void, Void> context) {
+    store = context.getStateStore(storeName);
+  }
+
+  @Override
+  public void process(Record<String, String> record) {
+    if (record.key() == null || record.value() == null) return;
+    long day = dayStart(record.timestamp());
+    byte[] sketch = store.fetch(record.key(), day);
+    if (sketch == null) {
+      sketch = HyperLogLog.newSketch();
+    }
+    if (HyperLogLog.add(sketch, record.value())) {
+      store.put(record.key(), sketch, day);
+    }
+  }
+}
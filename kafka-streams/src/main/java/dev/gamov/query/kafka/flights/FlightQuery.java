@@ -0,0 +1,293 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.avro.Schema;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.query.RangeQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.confluent.developer.models.flight.Flight;
+
+/**
+ * Ad-hoc filter / projection / group-by query over flights-store.
+ * <p>
+ * Built from HTTP query parameters:
+ * <ul>
+ *   <li>any Flight field name (e.g. {@code origin=SFO}) - equality filter, case-insensitive</li>
+ *   <li>{@code from}, {@code to}, {@code prefix} - flightNumber key range pushed down to the store</li>
+ *   <li>{@code select=field1,field2} - projection (default: all fields)</li>
+ *   <li>{@code groupBy=field} - count rows per field value instead of returning rows</li>
+ *   <li>{@code limit} - max rows returned, scanning stops early once reached; for
+ *       {@code groupBy}, the largest groups are kept and the rest reported as truncated</li>
+ *   <li>{@code timeoutMs}, {@code maxScan} - per-query time and scanned-row budget</li>
+ * </ul>
+ * Any other parameter name is rejected, so a misspelt filter fails instead of matching everything.
+ */
+public class FlightQuery {
+
+  static final int DEFAULT_LIMIT = 100;
+  static final int MAX_LIMIT = 10_000;
+  static final long DEFAULT_TIMEOUT_MS = 2_000L;
+  static final long MAX_TIMEOUT_MS = 10_000L;
+  static final long DEFAULT_MAX_SCAN = 1_000_000L;
+
+  private static final List<String> FIELDS = Flight.getClassSchema().getFields().stream()
+      .map(Schema.Field::name)
+      .toList();
+
+  private static final Set<String> RESERVED =
+      Set.of("select", "groupBy", "limit", "from", "to", "prefix", "timeoutMs", "maxScan");
+
+  private final Map<String, String> filters;
+  private final List<String> select;
+  private final String groupBy;
+  private final int limit;
+  private final String from;
+  private final String to;
+  private final long timeoutMs;
+  private final long maxScan;
+
+  FlightQuery(Map<String, String> filters, List<String> select, String groupBy, int limit,
+              String from, String to, long timeoutMs, long maxScan) {
+    this.filters = filters;
+    this.select = select;
+    this.groupBy = groupBy;
+    this.limit = limit;
+    this.from = from;
+    this.to = to;
+    this.timeoutMs = timeoutMs;
+    this.maxScan = maxScan;
+  }
+
+  /**
+   * Parse a query from request parameters; throws IllegalArgumentException on unknown
+   * parameters or fields and on bad numbers.
+   */
+  public static FlightQuery fromParams(Map<String, List<String>> params) {
+    Map<String, String> filters = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> e : params.entrySet()) {
+      if (FIELDS.contains(e.getKey())) {
+        if (!e.getValue().isEmpty()) {
+          filters.put(e.getKey(), e.getValue().get(0));
+        }
+      } else if (!RESERVED.contains(e.getKey())) {
+        throw new IllegalArgumentException("Unknown parameter: " + e.getKey());
+      }
+    }
+
+    List<String> select = FIELDS;
+    String selectParam = first(params, "select");
+    if (selectParam != null && !selectParam.isBlank()) {
+      select = Arrays.stream(selectParam.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+      for (String field : select) {
+        requireField(field);
+      }
+    }
+
+    String groupBy = first(params, "groupBy");
+    if (groupBy != null) {
+      requireField(groupBy);
+    }
+
+    // An empty bound is no bound at all
+    String from = emptyToNull(first(params, "from"));
+    String to = emptyToNull(first(params, "to"));
+    String prefix = first(params, "prefix");
+    if (prefix != null && !prefix.isEmpty()) {
+      // flightNumber keys are UTF-8 strings, so the prefix range is [prefix, prefix + max char]
+      from = prefix;
+      to = prefix + Character.MAX_VALUE;
+    }
+
+    int limit = (int) Math.min(parseLong(params, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+    long timeoutMs = Math.min(parseLong(params, "timeoutMs", DEFAULT_TIMEOUT_MS), MAX_TIMEOUT_MS);
+    long maxScan = parseLong(params, "maxScan", DEFAULT_MAX_SCAN);
+    if (limit <= 0 || timeoutMs <= 0 || maxScan <= 0) {
+      throw new IllegalArgumentException("limit, timeoutMs and maxScan must be positive");
+    }
+
+    return new FlightQuery(filters, select, groupBy, limit, from, to, timeoutMs, maxScan);
+  }
+
+  /**
+   * IQv2 range query for the pushed-down flightNumber key range.
+   */
+  public RangeQuery<String, Flight> rangeQuery() {
+    if (from != null && to != null) return RangeQuery.withRange(from, to);
+    if (from != null) return RangeQuery.withLowerBound(from);
+    if (to != null) return RangeQuery.withUpperBound(to);
+    return RangeQuery.withNoBounds();
+  }
+
+  /**
+   * Whether the query restricts the flightNumber key range, i.e. is not a full-store scan.
+   */
+  public boolean hasKeyRange() {
+    return from != null || to != null;
+  }
+
+  public boolean matches(Flight flight) {
+    if (flight == null) return false;
+    for (Map.Entry<String, String> f : filters.entrySet()) {
+      Object v = flight.get(f.getKey());
+      if (v == null || !String.valueOf(v).equalsIgnoreCase(f.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Map<String, Object> project(Flight flight) {
+    Map<String, Object> row = new LinkedHashMap<>();
+    for (String field : select) {
+      row.put(field, flight.get(field));
+    }
+    return row;
+  }
+
+  public boolean isGrouped() {
+    return groupBy != null;
+  }
+
+  public String groupBy() {
+    return groupBy;
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  public long timeoutMs() {
+    return timeoutMs;
+  }
+
+  public long maxScan() {
+    return maxScan;
+  }
+
+  /**
+   * Scan one partition's iterator into the shared state, stopping when the limit
+   * (for non-grouped queries), the deadline or the scan budget is hit.
+   */
+  void scan(Iterator<KeyValue<String, Flight>> it, State state) {
+    while (it.hasNext()) {
+      if (state.done.get()) return;
+      if (System.currentTimeMillis() > state.deadline) {
+        state.stop("timeout");
+        return;
+      }
+      if (state.scanned.incrementAndGet() > maxScan) {
+        state.stop("maxScan");
+        return;
+      }
+
+      Flight flight = it.next().value;
+      if (!matches(flight)) continue;
+
+      if (isGrouped()) {
+        Object g = flight.get(groupBy);
+        state.groups.computeIfAbsent(String.valueOf(g), k -> new LongAdder()).increment();
+      } else {
+        int n = state.emitted.incrementAndGet();
+        if (n > limit) {
+          state.done.set(true);
+          return;
+        }
+        state.rows.add(project(flight));
+        if (n == limit) {
+          // Enough rows: let the other partitions stop early as well
+          state.done.set(true);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Mutable per-execution state shared by all partition scans.
+   */
+  static final class State {
+    final long deadline;
+    final AtomicLong scanned = new AtomicLong();
+    final AtomicInteger emitted = new AtomicInteger();
+    final AtomicBoolean done = new AtomicBoolean();
+    final ConcurrentLinkedQueue<Map<String, Object>> rows = new ConcurrentLinkedQueue<>();
+    final ConcurrentHashMap<String, LongAdder> groups = new ConcurrentHashMap<>();
+    volatile String truncatedBy;
+
+    State(long deadline) {
+      this.deadline = deadline;
+    }
+
+    void stop(String reason) {
+      truncatedBy = reason;
+      done.set(true);
+    }
+
+    /**
+     * Rows, or the {@code limit} largest groups by count, plus scan statistics.
+     * Groups dropped by the limit are reported as {@code truncatedBy: limit}.
+     */
+    Map<String, Object> toResult(boolean grouped, int limit) {
+      Map<String, Object> result = new LinkedHashMap<>();
+      String truncation = truncatedBy;
+      if (grouped) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        groups.entrySet().stream()
+            .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+            .limit(limit)
+            .forEach(e -> counts.put(e.getKey(), e.getValue()));
+        result.put("groups", counts);
+        if (truncation == null && groups.size() > limit) {
+          truncation = "limit";
+        }
+      } else {
+        result.put("rows", new ArrayList<>(rows));
+      }
+      result.put("scanned", scanned.get());
+      result.put("truncated", truncation != null);
+      if (truncation != null) {
+        result.put("truncatedBy", truncation);
+      }
+      return result;
+    }
+  }
+
+  private static void requireField(String field) {
+    if (!FIELDS.contains(field)) {
+      throw new IllegalArgumentException("Unknown field: " + field);
+    }
+  }
+
+  private static String first(Map<String, List<String>> params, String key) {
+    List<String> values = params.get(key);
+    return (values == null || values.isEmpty()) ? null : values.get(0);
+  }
+
+  private static String emptyToNull(String v) {
+    return (v == null || v.isEmpty()) ? null : v;
+  }
+
+  private static long parseLong(Map<String, List<String>> params, String key, long def) {
+    String v = first(params, key);
+    if (v == null || v.isBlank()) return def;
+    try {
+      return Long.parseLong(v.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number for " + key + ": " + v);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.TaskMetadata;
+import org.apache.kafka.streams.ThreadMetadata;
+import org.apache.kafka.streams.query.QueryResult;
+import org.apache.kafka.streams.query.RangeQuery;
+import org.apache.kafka.streams.query.StateQueryRequest;
+import org.apache.kafka.streams.query.StateQueryResult;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.confluent.developer.models.flight.Flight;
+
+/**
+ * Runs a {@link FlightQuery} against the local partitions of flights-store.
+ * Each partition is scanned on its own pool thread using an IQv2 range query
+ * restricted to that partition, so the key range is pushed down to RocksDB
+ * and the scans stop as soon as the limit or the budget is reached.
+ */
+public class FlightQueryExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(FlightQueryExecutor.class);
+
+  /**
+   * Runs the range query against a single partition of flights-store.
+   */
+  interface PartitionQuery {
+    QueryResult<KeyValueIterator<String, Flight>> query(RangeQuery<String, Flight> query, int partition);
+  }
+
+  private final Supplier<Set<Integer>> localPartitions;
+  private final PartitionQuery partitionQuery;
+  private final ExecutorService pool;
+
+  public FlightQueryExecutor(KafkaStreams streams, int threads) {
+    this(() -> localPartitions(streams), (query, partition) -> queryPartition(streams, query, partition), threads);
+  }
+
+  FlightQueryExecutor(Supplier<Set<Integer>> localPartitions, PartitionQuery partitionQuery, int threads) {
+    this.localPartitions = localPartitions;
+    this.partitionQuery = partitionQuery;
+    AtomicInteger n = new AtomicInteger();
+    this.pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "flight-query-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  public Map<String, Object> execute(FlightQuery query) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    FlightQuery.State state = new FlightQuery.State(start + query.timeoutMs());
+
+    Set<Integer> partitions = localPartitions.get();
+    List<Future<?>> futures = new ArrayList<>(partitions.size());
+    for (int partition : partitions) {
+      futures.add(pool.submit(() -> scanPartition(query, partition, state)));
+    }
+
+    for (Future<?> f : futures) {
+      long remaining = state.deadline - System.currentTimeMillis();
+      try {
+        f.get(Math.max(remaining, 0L), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        // Scans check the deadline themselves; make sure they wind down
+        state.stop("timeout");
+      } catch (ExecutionException e) {
+        logger.warn("Partition scan failed: {}", e.getCause().toString());
+      }
+    }
+
+    Map<String, Object> result = state.toResult(query.isGrouped(), query.limit());
+    result.put("partitions", partitions.size());
+    result.put("tookMs", System.currentTimeMillis() - start);
+    return result;
+  }
+
+  private void scanPartition(FlightQuery query, int partition, FlightQuery.State state) {
+    if (state.done.get()) return;
+    QueryResult<KeyValueIterator<String, Flight>> partitionResult = partitionQuery.query(query.rangeQuery(), partition);
+    if (partitionResult == null || partitionResult.isFailure()) {
+      // Partition not hosted by a task of this store (or not active); nothing to scan
+      logger.debug("Skipping partition {}: {}", partition,
+          partitionResult == null ? "no result" : partitionResult.getFailureMessage());
+      return;
+    }
+    try (KeyValueIterator<String, Flight> it = partitionResult.getResult()) {
+      query.scan(it, state);
+    }
+  }
+
+  private static QueryResult<KeyValueIterator<String, Flight>> queryPartition(
+      KafkaStreams streams, RangeQuery<String, Flight> query, int partition) {
+    StateQueryRequest<KeyValueIterator<String, Flight>> request =
+        StateQueryRequest.inStore("flights-store")
+            .withQuery(query)
+            .withPartitions(Set.of(partition));
+    StateQueryResult<KeyValueIterator<String, Flight>> result = streams.query(request);
+    return result.getPartitionResults().get(partition);
+  }
+
+  /**
+   * Partitions of all active tasks on this instance; partitions that belong to
+   * other sub-topologies simply fail the store query and are skipped.
+   */
+  private static Set<Integer> localPartitions(KafkaStreams streams) {
+    Set<Integer> partitions = new TreeSet<>();
+    for (ThreadMetadata thread : streams.metadataForLocalThreads()) {
+      for (TaskMetadata task : thread.activeTasks()) {
+        partitions.add(task.taskId().partition());
+      }
+    }
+    return partitions;
+  }
+
+  /**
+   * Stop the scan pool; called when the query service shuts down.
+   */
+  public void close() {
+    pool.shutdownNow();
+  }
+}
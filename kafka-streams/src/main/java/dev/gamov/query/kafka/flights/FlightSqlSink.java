@@ -0,0 +1,408 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.processor.StateStoreContext;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.confluent.developer.models.flight.Flight;
+
+/**
+ * Optional in-process sink of the flights-store changelog into an embedded SQL
+ * database (SQLite by default, any JDBC URL whose dialect supports
+ * {@code INSERT ... ON CONFLICT DO UPDATE}, e.g. DuckDB).
+ * <p>
+ * Stream threads only enqueue changes into a bounded queue (blocking when it is
+ * full, so a slow database back-pressures the topology instead of dropping data).
+ * A dedicated writer thread collapses changes per flight and writes them as one
+ * batched upsert transaction whenever the batch is full or a flush is requested.
+ * <p>
+ * Flushes are commit-aligned: {@link SinkProcessor} is connected to a {@link SinkStore},
+ * and Kafka Streams flushes that store on every commit before the input offsets are
+ * committed. The flush blocks until the writer has written everything enqueued so far,
+ * so committed offsets never run ahead of SQL. Failed writes are retried with backoff;
+ * once retries are exhausted the sink fails and the next enqueue or flush throws,
+ * stopping the stream thread before the offsets of unwritten changes are committed.
+ * <p>
+ * Uses the same table layout as kafka-connect/init-sqlite.sh.
+ */
+public class FlightSqlSink implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(FlightSqlSink.class);
+
+  private static final DateTimeFormatter TIMESTAMP_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+  private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS flights ("
+      + "flight_number TEXT PRIMARY KEY, "
+      + "airline TEXT, "
+      + "departure_airport TEXT, "
+      + "arrival_airport TEXT, "
+      + "scheduled_departure TEXT, "
+      + "actual_departure TEXT, "
+      + "status TEXT, "
+      + "event_timestamp BIGINT)";
+
+  private static final String UPSERT = "INSERT INTO flights (flight_number, airline, departure_airport, "
+      + "arrival_airport, scheduled_departure, actual_departure, status, event_timestamp) "
+      + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+      + "ON CONFLICT (flight_number) DO UPDATE SET "
+      + "airline = excluded.airline, "
+      + "departure_airport = excluded.departure_airport, "
+      + "arrival_airport = excluded.arrival_airport, "
+      + "scheduled_departure = excluded.scheduled_departure, "
+      + "actual_departure = excluded.actual_departure, "
+      + "status = excluded.status, "
+      + "event_timestamp = excluded.event_timestamp";
+
+  private static final String DELETE = "DELETE FROM flights WHERE flight_number = ?";
+
+  public static final String STORE_NAME = "flights-sql-sink";
+
+  private static final int MAX_ATTEMPTS = 5;
+  private static final long INITIAL_BACKOFF_MS = 100L;
+  private static final long MAX_BACKOFF_MS = 5_000L;
+  private static final long POLL_MS = 100L;
+
+  // A null value is a tombstone; a change with a flushed future is a marker asking the
+  // writer to write what it has and complete the future
+  private record Change(String key, Flight value, long timestamp, CompletableFuture<Void> flushed) {}
+
+  private final Connection connection;
+  private final BlockingQueue<Change> queue;
+  private final int batchSize;
+  private final Thread writer;
+  private volatile boolean running = true;
+  private volatile Throwable failure;
+
+  public FlightSqlSink(String jdbcUrl, int queueSize, int batchSize) throws SQLException {
+    this.connection = DriverManager.getConnection(jdbcUrl);
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.batchSize = batchSize;
+    try (Statement st = connection.createStatement()) {
+      st.execute(CREATE_TABLE);
+    }
+    connection.setAutoCommit(false);
+    this.writer = new Thread(this::runWriter, "flights-sql-sink");
+    this.writer.setDaemon(true);
+  }
+
+  public void start() {
+    writer.start();
+  }
+
+  /**
+   * Store to connect {@link SinkProcessor} to, so that commits flush the sink.
+   */
+  public StoreBuilder<SinkStore> storeBuilder() {
+    return new SinkStoreBuilder(this);
+  }
+
+  /**
+   * Enqueue one flights-store change; blocks while the queue is full and throws once the sink has failed.
+   */
+  public void enqueue(String flightNumber, Flight flight, long timestamp) {
+    if (flightNumber == null) return;
+    put(new Change(flightNumber, flight, timestamp, null));
+  }
+
+  /**
+   * Write out everything enqueued so far and wait until it is committed to the database.
+   */
+  public void flush() {
+    CompletableFuture<Void> flushed = new CompletableFuture<>();
+    put(new Change(null, null, 0L, flushed));
+    while (true) {
+      checkNotFailed();
+      try {
+        flushed.get(POLL_MS, TimeUnit.MILLISECONDS);
+        return;
+      } catch (TimeoutException e) {
+        // Writer still busy; re-check that it is alive
+      } catch (ExecutionException e) {
+        throw new StreamsException("SQL sink flush failed", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new StreamsException("Interrupted while flushing SQL sink", e);
+      }
+    }
+  }
+
+  private void put(Change change) {
+    try {
+      // Bounded waits so a dead writer surfaces as an error instead of blocking forever
+      while (!queue.offer(change, POLL_MS, TimeUnit.MILLISECONDS)) {
+        checkNotFailed();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StreamsException("Interrupted while enqueueing to SQL sink", e);
+    }
+    checkNotFailed();
+  }
+
+  private void checkNotFailed() {
+    Throwable f = failure;
+    if (f != null) {
+      throw new StreamsException("SQL sink failed", f);
+    }
+  }
+
+  private void runWriter() {
+    Map<String, Change> pending = new LinkedHashMap<>();
+    try {
+      while (running || !queue.isEmpty()) {
+        Change change = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+        if (change == null) continue;
+        if (change.flushed() != null) {
+          write(pending);
+          change.flushed().complete(null);
+        } else {
+          // Later changes to the same flight replace earlier ones within a batch
+          pending.remove(change.key());
+          pending.put(change.key(), change);
+          if (pending.size() >= batchSize) {
+            write(pending);
+          }
+        }
+      }
+      write(pending);
+    } catch (Exception e) {
+      fail(e);
+    }
+  }
+
+  private void fail(Exception e) {
+    logger.error("SQL sink writer stopped; stream threads will fail on their next enqueue or flush", e);
+    failure = e;
+    // Release anyone waiting on a flush that will never be written
+    List<Change> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (Change c : remaining) {
+      if (c.flushed() != null) {
+        c.flushed().completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Write the collapsed batch, retrying with exponential backoff; pending changes are
+   * only cleared once the transaction is committed.
+   */
+  private void write(Map<String, Change> pending) throws SQLException, InterruptedException {
+    if (pending.isEmpty()) return;
+    long backoffMs = INITIAL_BACKOFF_MS;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        writeBatch(pending.values());
+        logger.debug("Wrote {} flight changes to SQL sink", pending.size());
+        pending.clear();
+        return;
+      } catch (SQLException e) {
+        try {
+          connection.rollback();
+        } catch (SQLException re) {
+          logger.warn("Rollback failed: {}", re.toString());
+        }
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        logger.warn("Failed to write {} flight changes to SQL sink (attempt {}), retrying in {} ms: {}",
+            pending.size(), attempt, backoffMs, e.toString());
+        Thread.sleep(backoffMs);
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+      }
+    }
+  }
+
+  private void writeBatch(Iterable<Change> changes) throws SQLException {
+    try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+         PreparedStatement delete = connection.prepareStatement(DELETE)) {
+      for (Change c : changes) {
+        Flight f = c.value();
+        if (f == null) {
+          delete.setString(1, c.key());
+          delete.addBatch();
+          continue;
+        }
+        upsert.setString(1, c.key());
+        upsert.setString(2, f.getAirline());
+        upsert.setString(3, f.getOrigin());
+        upsert.setString(4, f.getDestination());
+        upsert.setString(5, TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(f.getScheduledDeparture())));
+        if (f.getActualDeparture() == null) {
+          upsert.setNull(6, Types.VARCHAR);
+        } else {
+          upsert.setString(6, TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(f.getActualDeparture())));
+        }
+        upsert.setString(7, f.getStatus());
+        upsert.setLong(8, c.timestamp());
+        upsert.addBatch();
+      }
+      upsert.executeBatch();
+      delete.executeBatch();
+      connection.commit();
+    }
+  }
+
+  /**
+   * Stop the writer after draining the queue and close the connection.
+   */
+  @Override
+  public void close() {
+    running = false;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      logger.warn("Error closing SQL sink connection: {}", e.toString());
+    }
+  }
+
+  /**
+   * Forwards flights-store updates to the sink through the connected {@link SinkStore}.
+   */
+  public static class SinkProcessor implements Processor<String, Flight, Void, Void> {
+
+    private SinkStore store;
+
+    @Override
+    public void init(ProcessorContext<Void, Void> context) {
+      store = context.getStateStore(STORE_NAME);
+    }
+
+    @Override
+    public void process(Record<String, Flight> record) {
+      store.sink.enqueue(record.key(), record.value(), record.timestamp());
+    }
+  }
+
+  /**
+   * Holds no data of its own: it only exists so the sink takes part in the task's
+   * commit. Kafka Streams flushes state stores before committing input offsets, and
+   * flushing this store blocks until the sink has written everything enqueued.
+   */
+  public static class SinkStore implements StateStore {
+
+    private final FlightSqlSink sink;
+    private volatile boolean open;
+
+    SinkStore(FlightSqlSink sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public String name() {
+      return STORE_NAME;
+    }
+
+    @Override
+    public void init(StateStoreContext context, StateStore root) {
+      // Not logged, so there is never anything to restore
+      context.register(root, (key, value) -> { });
+      open = true;
+    }
+
+    @Override
+    public void flush() {
+      sink.flush();
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    @Override
+    public boolean persistent() {
+      return false;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+  }
+
+  /**
+   * Builder for the sink store. The store holds no data and never has a changelog, so
+   * the caching and logging toggles are all no-ops and {@link #loggingEnabled()} stays false.
+   */
+  private static final class SinkStoreBuilder implements StoreBuilder<SinkStore> {
+
+    private final FlightSqlSink sink;
+
+    SinkStoreBuilder(FlightSqlSink sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public StoreBuilder<SinkStore> withCachingEnabled() {
+      return this;
+    }
+
+    @Override
+    public StoreBuilder<SinkStore> withCachingDisabled() {
+      return this;
+    }
+
+    @Override
+    public StoreBuilder<SinkStore> withLoggingEnabled(Map<String, String> config) {
+      return this;
+    }
+
+    @Override
+    public StoreBuilder<SinkStore> withLoggingDisabled() {
+      return this;
+    }
+
+    @Override
+    public SinkStore build() {
+      return new SinkStore(sink);
+    }
+
+    @Override
+    public Map<String, String> logConfig() {
+      return Map.of();
+    }
+
+    @Override
+    public boolean loggingEnabled() {
+      return false;
+    }
+
+    @Override
+    public String name() {
+      return STORE_NAME;
+    }
+  }
+}
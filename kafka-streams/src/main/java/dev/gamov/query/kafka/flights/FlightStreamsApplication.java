@@ -7,13 +7,17 @@ import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KGroupedTable;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.Repartitioned;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.apache.kafka.common.utils.Bytes;
 import org.slf4j.Logger;
@@ -22,13 +26,16 @@ import org.slf4j.LoggerFactory;
 import dev.gamov.query.kafka.CloudConfig;
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import io.confluent.developer.models.flight.Flight;
+import io.javalin.Javalin;
 
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
 
 import static org.apache.kafka.streams.StreamsConfig.APPLICATION_ID_CONFIG;
 import static org.apache.kafka.streams.StreamsConfig.BOOTSTRAP_SERVERS_CONFIG;
@@ -74,12 +81,34 @@ public class FlightStreamsApplication {
   }
 
   public static Topology createTopology(String inputTopic, Map<String, Object> serdeConfig) {
+    return createTopology(inputTopic, serdeConfig, null);
+  }
+
+  /**
+   * @param sqlSink optional embedded SQL sink fed with every flights-store update (may be null)
+   */
+  public static Topology createTopology(String inputTopic, Map<String, Object> serdeConfig, FlightSqlSink sqlSink) {
+    return createTopology(inputTopic, serdeConfig, sqlSink, null);
+  }
+
+  /**
+   * @param sqlSink optional embedded SQL sink fed with every flights-store update (may be null)
+   * @param skew    optional two-phase salted aggregation for hot origins (may be null)
+   */
+  public static Topology createTopology(String inputTopic, Map<String, Object> serdeConfig,
+                                        FlightSqlSink sqlSink, SaltedAggregation skew) {
     StreamsBuilder builder = new StreamsBuilder();
 
-    // Specific Avro serde for Flight
+    // Specific Avro serde for Flight (external topic boundary, Schema Registry)
     SpecificAvroSerde<Flight> valueSerde = new SpecificAvroSerde<>();
     valueSerde.configure(serdeConfig, false);
 
+    // Compact registry-free serdes for the repartition topic, flights-store and its changelog,
+    // each with its own format version
+    CompactFlightSerde repartitionSerde =
+        new CompactFlightSerde(CompactFlightSerde.Format.REPARTITION, valueSerde.deserializer());
+    CompactFlightSerde storeSerde = new CompactFlightSerde(CompactFlightSerde.Format.STORE, valueSerde.deserializer());
+
     // Read from topic
     KStream<String, Flight> flights = builder.stream(
         inputTopic,
@@ -94,36 +123,74 @@ public class FlightStreamsApplication {
 
     // Materialize latest record per flightNumber in a state store
     final var flightsTable = rekeyed
-        .groupByKey(Grouped.with(Serdes.String(), valueSerde))
+        .groupByKey(Grouped.with(Serdes.String(), repartitionSerde))
         .reduce((agg, newVal) -> newVal,
             Materialized.<String, Flight, KeyValueStore<Bytes, byte[]>>as("flights-store")
                 .withKeySerde(Serdes.String())
-                .withValueSerde(valueSerde)
+                .withValueSerde(storeSerde)
         );
 
-    // Derive aggregation: number of delayed flights per origin airport
-    flightsTable
-        .groupBy((flightNumber, flight) -> {
-          String origin = flight == null ? null : flight.getOrigin();
+    // Optionally mirror flights-store into an embedded SQL database, flushed on every commit
+    if (sqlSink != null) {
+      builder.addStateStore(sqlSink.storeBuilder());
+      flightsTable.toStream().process(FlightSqlSink.SinkProcessor::new, FlightSqlSink.STORE_NAME);
+    }
+
+    // Derive aggregation: number of delayed flights per origin airport. In skew mode the first
+    // stage counts per salted sub-key of hot origins, and a second stage merges the partials exactly.
+    BiFunction<String, String, String> groupKey = skew == null ? (origin, flightNumber) -> origin : skew::subKey;
+    KTable<String, Long> delayedByOrigin = sumByKey(
+        flightsTable.groupBy((flightNumber, flight) -> {
+          String origin = flight == null ? null : groupKey.apply(flight.getOrigin(), flightNumber);
           long delayed = (flight != null && "DELAYED".equalsIgnoreCase(flight.getStatus())) ? 1L : 0L;
-          return new org.apache.kafka.streams.KeyValue<>(origin, delayed);
-        }, Grouped.with(Serdes.String(), Serdes.Long()))
-        .aggregate(
-            () -> 0L,
-            (origin, newValue, aggregate) -> aggregate + (newValue == null ? 0L : newValue),
-            (origin, oldValue, aggregate) -> aggregate - (oldValue == null ? 0L : oldValue),
-            Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>as("delayed-by-origin-store")
-                .withKeySerde(Serdes.String())
-                .withValueSerde(Serdes.Long())
-        )
+          return new KeyValue<>(origin, delayed);
+        }, Grouped.with(Serdes.String(), Serdes.Long())),
+        skew == null ? "delayed-by-origin-store" : "delayed-by-origin-partial-store");
+    if (skew != null) {
+      delayedByOrigin = sumByKey(
+          delayedByOrigin.groupBy((subKey, partial) -> new KeyValue<>(SaltedAggregation.origin(subKey), partial),
+              Grouped.with(Serdes.String(), Serdes.Long())),
+          "delayed-by-origin-store");
+    }
+
+    delayedByOrigin
         .toStream()
         .peek((k, v) -> logger.debug("Delayed count origin {} -> {}", k, v));
 
+    // Daily distinct counts (HyperLogLog): unique flights per airline, unique destinations per origin
+    builder.addStateStore(DailyDistinctCountProcessor.storeBuilder("unique-flights-by-airline-store"));
+    builder.addStateStore(DailyDistinctCountProcessor.storeBuilder("unique-destinations-by-origin-store"));
+    KStream<String, Flight> nonNull = flights.filter((key, flight) -> flight != null);
+    nonNull
+        .map((key, flight) -> KeyValue.pair(flight.getAirline(), flight.getFlightNumber()))
+        .repartition(Repartitioned.with(Serdes.String(), Serdes.String()).withName("unique-flights-by-airline"))
+        .process(() -> new DailyDistinctCountProcessor("unique-flights-by-airline-store"),
+            "unique-flights-by-airline-store");
+    nonNull
+        .map((key, flight) -> KeyValue.pair(flight.getOrigin(), flight.getDestination()))
+        .repartition(Repartitioned.with(Serdes.String(), Serdes.String()).withName("unique-destinations-by-origin"))
+        .process(() -> new DailyDistinctCountProcessor("unique-destinations-by-origin-store"),
+            "unique-destinations-by-origin-store");
+
     final Topology build = builder.build();
     System.out.println(build.describe());
     return build;
   }
 
+  /**
+   * Sum of the values per key; the subtractor retracts a row's previous value when it changes or moves.
+   */
+  private static KTable<String, Long> sumByKey(KGroupedTable<String, Long> grouped, String storeName) {
+    return grouped.aggregate(
+        () -> 0L,
+        (key, newValue, aggregate) -> aggregate + (newValue == null ? 0L : newValue),
+        (key, oldValue, aggregate) -> aggregate - (oldValue == null ? 0L : oldValue),
+        Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>as(storeName)
+            .withKeySerde(Serdes.String())
+            .withValueSerde(Serdes.Long())
+    );
+  }
+
   public static void main(String[] args) {
     // Load configuration from cloud.properties with fallback to local defaults/env
     Properties cloud = CloudConfig.load();
@@ -165,17 +232,47 @@ public class FlightStreamsApplication {
       logger.warn("Unable to create topic '{}': {}", inputTopic, e.toString());
     }
 
-    Topology topology = createTopology(inputTopic, serdeConfig);
+    // Optional in-process SQL sink, e.g. FLIGHTS_SQL_SINK_URL=jdbc:sqlite:flights.db
+    String sqlSinkUrl = envOrDefault("FLIGHTS_SQL_SINK_URL", "");
+    FlightSqlSink sqlSink = null;
+    if (!sqlSinkUrl.isEmpty()) {
+      try {
+        sqlSink = new FlightSqlSink(sqlSinkUrl,
+            Integer.parseInt(envOrDefault("FLIGHTS_SQL_SINK_QUEUE", "50000")),
+            Integer.parseInt(envOrDefault("FLIGHTS_SQL_SINK_BATCH", "5000")));
+        sqlSink.start();
+        logger.info("SQL sink enabled: {}", sqlSinkUrl);
+      } catch (SQLException e) {
+        logger.error("Unable to open SQL sink '{}'; continuing without it", sqlSinkUrl, e);
+      }
+    }
+
+    // Optional skew mode for hot hub airports, e.g. FLIGHTS_SKEW_SALTS=8 FLIGHTS_HOT_ORIGINS=ATL,ORD
+    // (FLIGHTS_HOT_SHARE=0.05 also salts any origin above 5% of recent updates)
+    SaltedAggregation skew = null;
+    int salts = Integer.parseInt(envOrDefault("FLIGHTS_SKEW_SALTS", "0"));
+    if (salts > 1) {
+      skew = SaltedAggregation.of(salts, envOrDefault("FLIGHTS_HOT_ORIGINS", ""),
+          Double.parseDouble(envOrDefault("FLIGHTS_HOT_SHARE", "0")));
+      logger.info("Skew mode enabled with {} salts", salts);
+    }
+
+    Topology topology = createTopology(inputTopic, serdeConfig, sqlSink, skew);
 
     streams = new KafkaStreams(topology, props);
     streams.start();
 
     // Start interactive query service
-    FlightsQueryService.start(streams);
+    Javalin queryService = FlightsQueryService.start(streams);
 
+    final FlightSqlSink sink = sqlSink;
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       logger.info("Shutting down FlightStreamsApplication");
+      queryService.stop();
       streams.close();
+      if (sink != null) {
+        sink.close();
+      }
     }));
   }
 }
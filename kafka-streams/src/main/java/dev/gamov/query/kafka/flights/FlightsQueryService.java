@@ -7,22 +7,47 @@ import org.apache.kafka.streams.StoreQueryParameters;
 import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.QueryableStoreTypes;
 import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
+import dev.gamov.query.kafka.HyperLogLog;
 import io.confluent.developer.models.flight.Flight;
 import io.javalin.Javalin;
+import io.javalin.http.Context;
 import io.javalin.http.staticfiles.Location;
 
 public class FlightsQueryService {
 
   private static final ObjectMapper MAPPER = new ObjectMapper();
+  // Jetty acceptor / selector threads plus the unguarded routes (UI, /admission)
+  private static final int SPARE_HTTP_THREADS = 32;
 
-  public static void start(KafkaStreams streams) {
+  public static Javalin start(KafkaStreams streams) {
     int port = Integer.parseInt(System.getenv().getOrDefault("FLIGHTS_QUERY_PORT", "9100"));
+    // Parallel per-partition scans for /query, stopped together with the server
+    int queryThreads = Integer.parseInt(System.getenv().getOrDefault("FLIGHTS_QUERY_THREADS", "4"));
+    FlightQueryExecutor executor = new FlightQueryExecutor(streams, queryThreads);
+    // Separate adaptive concurrency limits per route class keep scans from starving point lookups
+    AdmissionController admission = new AdmissionController();
     Javalin app = Javalin.create(config -> {
       config.showJavalinBanner = false;
+      config.events.serverStopped(executor::close);
+      // Every admitted or queued request holds a Jetty thread. With spare threads beyond that,
+      // overload is rejected by the admission limits instead of queueing inside Jetty.
+      QueuedThreadPool threadPool = new QueuedThreadPool(admission.maxBlockedThreads() + SPARE_HTTP_THREADS, 8);
+      threadPool.setName("JettyServerThreadPool");
+      config.jetty.threadPool = threadPool;
       // Serve static files from classpath:/public
       config.staticFiles.add(staticFiles -> {
         staticFiles.hostedPath = "/"; // root
@@ -35,7 +60,12 @@ public class FlightsQueryService {
     // Root redirects to the UI
     app.get("/", ctx -> ctx.redirect("/index.html"));
 
-    app.get("/flights/{flightNumber}", ctx -> {
+    app.get("/admission", ctx -> {
+      ctx.contentType("application/json");
+      ctx.result(MAPPER.writeValueAsString(admission.stats()));
+    });
+
+    app.get("/flights/{flightNumber}", admission.guard(AdmissionController.RouteClass.POINT, ctx -> {
       String flightNumber = ctx.pathParam("flightNumber");
       ReadOnlyKeyValueStore<String, Flight> store =
           streams.store(StoreQueryParameters.fromNameAndType("flights-store", QueryableStoreTypes.keyValueStore()));
@@ -59,10 +89,10 @@ public class FlightsQueryService {
 
       ctx.contentType("application/json");
       ctx.result(MAPPER.writeValueAsString(dto));
-    });
+    }));
 
     // Get delayed count for a specific airport (origin)
-    app.get("/airports/{code}/delayed", ctx -> {
+    app.get("/airports/{code}/delayed", admission.guard(AdmissionController.RouteClass.POINT, ctx -> {
       String code = ctx.pathParam("code");
       ReadOnlyKeyValueStore<String, Long> store =
           streams.store(StoreQueryParameters.fromNameAndType("delayed-by-origin-store", QueryableStoreTypes.keyValueStore()));
@@ -70,10 +100,37 @@ public class FlightsQueryService {
       if (count == null) count = 0L;
       ctx.contentType("application/json");
       ctx.result(MAPPER.writeValueAsString(Map.of("airport", code, "delayedCount", count)));
-    });
+    }));
+
+    // Approximate (HyperLogLog, ~1% error) distinct counts per UTC day; ?day=YYYY-MM-DD (default today)
+    // and ?days=N to merge the sketches of the N days ending at that day
+    app.get("/airlines/{airline}/unique-flights", admission.guard(AdmissionController.RouteClass.POINT, ctx -> {
+      String airline = ctx.pathParam("airline");
+      distinctCount(streams, "unique-flights-by-airline-store", "airline", airline, "uniqueFlights", ctx);
+    }));
+
+    app.get("/airports/{code}/unique-destinations", admission.guard(AdmissionController.RouteClass.POINT, ctx -> {
+      String code = ctx.pathParam("code");
+      distinctCount(streams, "unique-destinations-by-origin-store", "airport", code, "uniqueDestinations", ctx);
+    }));
+
+    // Ad-hoc filter / projection / group-by query over flights-store, e.g.
+    // /query?origin=SFO&status=DELAYED&groupBy=airline
+    // Key-range queries are admitted as range scans, everything else as a full scan
+    app.get("/query", admission.guard(FlightsQueryService::queryRouteClass, ctx -> {
+      FlightQuery query;
+      try {
+        query = FlightQuery.fromParams(ctx.queryParamMap());
+      } catch (IllegalArgumentException e) {
+        badRequest(ctx, e.getMessage());
+        return;
+      }
+      ctx.contentType("application/json");
+      ctx.result(MAPPER.writeValueAsString(executor.execute(query)));
+    }));
 
     // Get delayed counts for all airports
-    app.get("/airports/delayed", ctx -> {
+    app.get("/airports/delayed", admission.guard(AdmissionController.RouteClass.FULL_SCAN, ctx -> {
       ReadOnlyKeyValueStore<String, Long> store =
           streams.store(StoreQueryParameters.fromNameAndType("delayed-by-origin-store", QueryableStoreTypes.keyValueStore()));
       Map<String, Long> result = new HashMap<>();
@@ -85,6 +142,64 @@ public class FlightsQueryService {
       }
       ctx.contentType("application/json");
       ctx.result(MAPPER.writeValueAsString(result));
-    });
+    }));
+
+    return app;
+  }
+
+  private static AdmissionController.RouteClass queryRouteClass(Context ctx) {
+    try {
+      return FlightQuery.fromParams(ctx.queryParamMap()).hasKeyRange()
+          ? AdmissionController.RouteClass.RANGE
+          : AdmissionController.RouteClass.FULL_SCAN;
+    } catch (IllegalArgumentException e) {
+      // Rejected with 400 by the handler without touching the store
+      return AdmissionController.RouteClass.POINT;
+    }
+  }
+
+  private static void distinctCount(KafkaStreams streams, String storeName, String keyName,
+                                    String key, String countName, Context ctx) throws Exception {
+    LocalDate day;
+    int days;
+    try {
+      String dayParam = ctx.queryParam("day");
+      day = dayParam == null ? LocalDate.now(ZoneOffset.UTC) : LocalDate.parse(dayParam);
+      days = Integer.parseInt(Objects.requireNonNullElse(ctx.queryParam("days"), "1"));
+    } catch (DateTimeParseException | NumberFormatException e) {
+      badRequest(ctx, "day must be YYYY-MM-DD and days a number");
+      return;
+    }
+    long maxDays = DailyDistinctCountProcessor.RETENTION.toDays();
+    if (days < 1 || days > maxDays) {
+      badRequest(ctx, "days must be between 1 and " + maxDays);
+      return;
+    }
+    Instant to = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    Instant from = to.minus(Duration.ofDays(days - 1L));
+
+    ReadOnlyWindowStore<String, byte[]> store =
+        streams.store(StoreQueryParameters.fromNameAndType(storeName, QueryableStoreTypes.windowStore()));
+    // Sketches are mergeable: a multi-day count is the estimate of the register-wise max
+    byte[] merged = HyperLogLog.newSketch();
+    try (WindowStoreIterator<byte[]> it = store.fetch(key, from, to)) {
+      while (it.hasNext()) {
+        HyperLogLog.merge(merged, it.next().value);
+      }
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put(keyName, key);
+    result.put("day", day.toString());
+    result.put("days", days);
+    result.put(countName, HyperLogLog.estimate(merged));
+    ctx.contentType("application/json");
+    ctx.result(MAPPER.writeValueAsString(result));
+  }
+
+  private static void badRequest(Context ctx, String message) throws Exception {
+    ctx.status(400);
+    ctx.contentType("application/json");
+    ctx.result(MAPPER.writeValueAsString(Map.of("error", message)));
   }
 }
@@ -0,0 +1,98 @@
+package dev.gamov.query.kafka.flights;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in skew mode for the delayed-by-origin aggregation.
+ * <p>
+ * Hot origins (configured, or detected from their share of recent updates) are
+ * salted into N sub-keys {@code ORIGIN|salt} for a first partial aggregation, so a
+ * hub such as ATL is spread over several repartition partitions and tasks. A cheap
+ * second stage sums the partials back into one exact count per origin; the partial
+ * store's record cache collapses updates, so the merge stage sees far fewer records.
+ * <p>
+ * The salt is derived from the flight number, so the retraction of a flight's old
+ * value lands on the same sub-key as its earlier addition. Even when an origin turns
+ * hot (or cold) mid-stream and an addition and its retraction land on different
+ * sub-keys, the merged sum stays exact; only the individual partials can go negative.
+ */
+public class SaltedAggregation {
+
+  static final String SEPARATOR = "|";
+
+  private final int salts;
+  private final Set<String> configuredHot;
+  private final double hotShare;
+  private final long window;
+
+  private final Map<String, LongAdder> windowCounts = new ConcurrentHashMap<>();
+  private final AtomicLong seen = new AtomicLong();
+  private volatile Set<String> detectedHot = Set.of();
+
+  /**
+   * @param salts      number of sub-keys per hot origin
+   * @param hotOrigins origins that are always salted
+   * @param hotShare   share of updates in a window above which an origin is detected as hot (0 disables detection)
+   * @param window     number of updates per detection window
+   */
+  public SaltedAggregation(int salts, Set<String> hotOrigins, double hotShare, long window) {
+    if (salts < 1) throw new IllegalArgumentException("salts must be >= 1");
+    this.salts = salts;
+    this.configuredHot = hotOrigins;
+    this.hotShare = hotShare;
+    this.window = window;
+  }
+
+  /**
+   * Build from a comma-separated hot origin list, e.g. "ATL,ORD".
+   */
+  public static SaltedAggregation of(int salts, String hotOrigins, double hotShare) {
+    Set<String> hot = hotOrigins == null || hotOrigins.isBlank() ? Set.of() : Arrays.stream(hotOrigins.split(","))
+        .map(String::trim)
+        .filter(s -> !s.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+    return new SaltedAggregation(salts, hot, hotShare, 10_000L);
+  }
+
+  /**
+   * Phase-one grouping key: the origin itself, or {@code origin|salt} for hot origins.
+   */
+  public String subKey(String origin, String flightNumber) {
+    if (origin == null) return null;
+    observe(origin);
+    if (!isHot(origin) || flightNumber == null) return origin;
+    int salt = Math.floorMod(flightNumber.hashCode(), salts);
+    return origin + SEPARATOR + salt;
+  }
+
+  /**
+   * Phase-two grouping key: strips the salt off a sub-key.
+   */
+  public static String origin(String subKey) {
+    int i = subKey.indexOf(SEPARATOR);
+    return i < 0 ? subKey : subKey.substring(0, i);
+  }
+
+  public boolean isHot(String origin) {
+    return configuredHot.contains(origin) || detectedHot.contains(origin);
+  }
+
+  private void observe(String origin) {
+    if (hotShare <= 0) return;
+    windowCounts.computeIfAbsent(origin, k -> new LongAdder()).increment();
+    if (seen.incrementAndGet() % window == 0) {
+      long threshold = (long) (hotShare * window);
+      detectedHot = windowCounts.entrySet().stream()
+          .filter(e -> e.getValue().sum() >= threshold)
+          .map(Map.Entry::getKey)
+          .collect(Collectors.toUnmodifiableSet());
+      windowCounts.clear();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package dev.gamov.query.kafka.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Parser for movies.csv lines: {@code movieId,title,genres}.
+ * <p>
+ * Titles containing commas are double-quoted (with {@code ""} as an escaped quote),
+ * genres are pipe-separated.
+ */
+public final class MovieCsv {
+
+  private static final Pattern YEAR_SUFFIX = Pattern.compile("\\s*\\(\\d{4}\\)\\s*$");
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final String NO_GENRES = "(no genres listed)";
+
+  // Too common in titles to say anything about what is trending
+  private static final Set<String> STOP_WORDS = Set.of("the", "a", "an", "of", "and", "in", "on", "to", "for");
+
+  public record Movie(String movieId, String title, List<String> genres) {
+
+    /**
+     * Lower-cased title words without the trailing release year and stop words.
+     */
+    public List<String> titleWords() {
+      String t = YEAR_SUFFIX.matcher(title).replaceFirst("").toLowerCase(Locale.ROOT);
+      return Arrays.stream(NON_WORD.split(t))
+          .filter(w -> !w.isEmpty() && !STOP_WORDS.contains(w))
+          .toList();
+    }
+  }
+
+  private MovieCsv() {}
+
+  /**
+   * Parse one CSV line; returns null for the header or malformed lines.
+   */
+  public static Movie parse(String line) {
+    if (line == null) return null;
+    List<String> fields = split(line);
+    if (fields == null || fields.size() != 3 || "movieId".equals(fields.get(0))) return null;
+
+    List<String> genres = new ArrayList<>();
+    if (!NO_GENRES.equals(fields.get(2))) {
+      for (String g : fields.get(2).split("\\|")) {
+        if (!g.isBlank()) genres.add(g.trim());
+      }
+    }
+    return new Movie(fields.get(0), fields.get(1), genres);
+  }
+
+  /**
+   * Split a CSV line honouring double quotes; returns null on an unterminated quote.
+   */
+  static List<String> split(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+            field.append('"');
+            i++;
+          } else {
+            quoted = false;
+          }
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    if (quoted) return null;
+    fields.add(field.toString());
+    return fields;
+  }
+}
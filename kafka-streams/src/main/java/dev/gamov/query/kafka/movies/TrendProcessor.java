@@ -0,0 +1,94 @@
+package dev.gamov.query.kafka.movies;
+
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.TimestampedWindowStore;
+import org.apache.kafka.streams.state.ValueAndTimestamp;
+
+import java.time.Duration;
+
+/**
+ * Turns hopping-window count updates into an incrementally maintained trend ranking.
+ * <p>
+ * Only the earliest window containing the record is scored: it is the fullest of the
+ * overlapping windows and the next one to close. Its count is compared with the
+ * previous (adjacent, non-overlapping) window from the windowed count store, scaled
+ * by the fraction of the window that has elapsed.
+ * <p>
+ * The ranking is kept in memory per task, rebuilt from the ranking store on init and
+ * written back under {@link #RANKING_KEY} when it changed: once per commit interval,
+ * and on close so a clean rebalance or shutdown hands over the latest ranking. Only a
+ * crash loses ranking changes, at most one commit interval of them.
+ */
+public class TrendProcessor implements Processor<Windowed<String>, Long, Void, Void> {
+
+  public static final String RANKING_KEY = "top";
+
+  private final String countsStoreName;
+  private final String rankingStoreName;
+  private final long windowSizeMs;
+  private final long advanceMs;
+  private final int capacity;
+
+  private TimestampedWindowStore<String, Long> counts;
+  private KeyValueStore<String, String> rankings;
+  private TrendRanking ranking;
+  private boolean dirty;
+
+  public TrendProcessor(String countsStoreName, String rankingStoreName, long windowSizeMs, long advanceMs,
+                        int capacity) {
+    this.countsStoreName = countsStoreName;
+    this.rankingStoreName = rankingStoreName;
+    this.windowSizeMs = windowSizeMs;
+    this.advanceMs = advanceMs;
+    this.capacity = capacity;
+  }
+
+  @Override
+  public void init(ProcessorContext<Void, Void> context) {
+    counts = context.getStateStore(countsStoreName);
+    rankings = context.getStateStore(rankingStoreName);
+    ranking = TrendRanking.decode(rankings.get(RANKING_KEY));
+
+    // appConfigs() includes resolved defaults, so the commit interval is always present
+    Object interval = context.appConfigs().get(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG);
+    long commitIntervalMs = interval == null ? 30_000L : Long.parseLong(interval.toString());
+    context.schedule(Duration.ofMillis(commitIntervalMs), PunctuationType.WALL_CLOCK_TIME, ts -> writeRanking());
+  }
+
+  @Override
+  public void process(Record<Windowed<String>, Long> record) {
+    if (record.key() == null || record.value() == null) return;
+    long windowStart = record.key().window().start();
+    long timestamp = record.timestamp();
+    // A later window containing the same record only holds part of the data; skip it
+    if (windowStart + windowSizeMs - advanceMs > timestamp) return;
+
+    String term = record.key().key();
+    long current = record.value();
+    ValueAndTimestamp<Long> prev = counts.fetch(term, windowStart - windowSizeMs);
+    long previous = prev == null || prev.value() == null ? 0L : prev.value();
+
+    double elapsed = Math.min(1.0, (timestamp - windowStart + 1.0) / windowSizeMs);
+    dirty |= ranking.update(
+        new TrendRanking.Entry(term, TrendRanking.score(current, previous, elapsed), current, previous, windowStart),
+        windowSizeMs, capacity);
+  }
+
+  @Override
+  public void close() {
+    // Runs before the task's final flush, so the write still reaches the changelog
+    writeRanking();
+  }
+
+  private void writeRanking() {
+    if (!dirty) return;
+    rankings.put(RANKING_KEY, ranking.encode());
+    dirty = false;
+  }
+}
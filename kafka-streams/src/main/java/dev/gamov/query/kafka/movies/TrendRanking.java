@@ -0,0 +1,108 @@
+package dev.gamov.query.kafka.movies;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Bounded top-N ranking of trending terms, kept sorted by score.
+ * <p>
+ * Held in memory as a score-ordered set plus a per-term index, so an update costs
+ * O(log N) without re-sorting. Stored as a plain string (one tab-separated entry
+ * per line) so it can live in a String/String key-value store and be served
+ * without scanning the window counts.
+ */
+public class TrendRanking {
+
+  public record Entry(String term, double score, long current, long previous, long windowStart) {
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> m = new LinkedHashMap<>();
+      m.put("term", term);
+      m.put("score", score);
+      m.put("current", current);
+      m.put("previous", previous);
+      m.put("windowStart", windowStart);
+      return m;
+    }
+  }
+
+  private static final Comparator<Entry> BY_SCORE =
+      Comparator.comparingDouble(Entry::score).reversed().thenComparing(Entry::term);
+
+  private final NavigableSet<Entry> sorted = new TreeSet<>(BY_SCORE);
+  private final Map<String, Entry> byTerm = new HashMap<>();
+  // Entries for windows starting before this have been evicted
+  private long evictedBefore = Long.MIN_VALUE;
+
+  /**
+   * Trend score of the current window against the previous one: growth scaled
+   * down for terms that were already frequent. The current count is extrapolated
+   * to a full window from the fraction of it that has elapsed, so a window still
+   * being filled is not penalised against a complete previous one.
+   */
+  public static double score(long current, long previous, double elapsedFraction) {
+    return (current / elapsedFraction - previous) / Math.sqrt(previous + 1.0);
+  }
+
+  public static TrendRanking decode(String encoded) {
+    TrendRanking ranking = new TrendRanking();
+    if (encoded != null && !encoded.isEmpty()) {
+      for (String line : encoded.split("\n")) {
+        String[] f = line.split("\t");
+        if (f.length != 5) continue;
+        Entry e = new Entry(f[0], Double.parseDouble(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]),
+            Long.parseLong(f[4]));
+        ranking.sorted.add(e);
+        ranking.byTerm.put(e.term(), e);
+      }
+    }
+    return ranking;
+  }
+
+  public String encode() {
+    StringBuilder sb = new StringBuilder();
+    for (Entry e : sorted) {
+      sb.append(e.term()).append('\t').append(e.score()).append('\t').append(e.current()).append('\t')
+          .append(e.previous()).append('\t').append(e.windowStart()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Apply one windowed count update; returns whether the ranking changed.
+   * Updates for an older window than the one already ranked for the term are ignored,
+   * entries whose window started before {@code windowStart - windowSizeMs} are evicted
+   * once the windows move on, and the ranking is trimmed to {@code capacity} entries.
+   */
+  public boolean update(Entry update, long windowSizeMs, int capacity) {
+    if (update.windowStart() < evictedBefore) return false;
+    String term = update.term().replace('\t', ' ').replace('\n', ' ');
+    Entry existing = byTerm.get(term);
+    if (existing != null) {
+      if (existing.windowStart() > update.windowStart()) return false;
+      sorted.remove(existing);
+    }
+    Entry entry = new Entry(term, update.score(), update.current(), update.previous(), update.windowStart());
+    sorted.add(entry);
+    byTerm.put(term, entry);
+
+    long staleBefore = update.windowStart() - windowSizeMs;
+    if (staleBefore > evictedBefore) {
+      evictedBefore = staleBefore;
+      byTerm.values().removeIf(e -> e.windowStart() < staleBefore && sorted.remove(e));
+    }
+    while (sorted.size() > capacity) {
+      byTerm.remove(sorted.pollLast().term());
+    }
+    return true;
+  }
+
+  public List<Entry> top(int k) {
+    return sorted.stream().limit(k).toList();
+  }
+}
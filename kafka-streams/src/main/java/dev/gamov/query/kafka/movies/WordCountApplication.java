@@ -6,14 +6,21 @@ import org.apache.kafka.clients.admin.CreateTopicsResult;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Properties;
@@ -32,15 +39,28 @@ public class WordCountApplication {
   private static final Logger logger = LoggerFactory.getLogger(WordCountApplication.class);
   private static KafkaStreams streams;
 
+  static final Duration TREND_WINDOW = Duration.ofHours(1);
+  static final Duration TREND_GRACE = Duration.ofMinutes(5);
+  static final int TREND_CAPACITY = 100;
+
   private static String envOrDefault(String key, String def) {
     String v = System.getenv(key);
     return (v == null || v.isBlank()) ? def : v;
   }
 
   public static Topology createTopology(String inputTopic, String outputTopic) {
+    return createTopology(inputTopic, outputTopic, TREND_WINDOW);
+  }
+
+  /**
+   * @param trendWindow size of the hopping windows used for trending title words and genres
+   */
+  public static Topology createTopology(String inputTopic, String outputTopic, Duration trendWindow) {
     StreamsBuilder builder = new StreamsBuilder();
 
-    builder.<String, String>stream(inputTopic)
+    KStream<String, String> lines = builder.<String, String>stream(inputTopic);
+
+    lines
         .flatMapValues(value -> {
           logger.info("Processing value: {}", value);
           return Arrays.asList(((String) value).toLowerCase().split("\\W+"));
@@ -50,11 +70,48 @@ public class WordCountApplication {
         .toStream()
         .to(outputTopic, Produced.with(Serdes.String(), Serdes.Long()));
 
+    // Trending: parse the CSV properly and keep title words and genres apart
+    KStream<String, MovieCsv.Movie> movies = lines
+        .mapValues(MovieCsv::parse)
+        .filter((key, movie) -> movie != null);
+
+    addTrending(builder, movies.flatMapValues(MovieCsv.Movie::titleWords), "title-words", trendWindow);
+    addTrending(builder, movies.flatMapValues(MovieCsv.Movie::genres), "genres", trendWindow);
+
     final Topology build = builder.build();
     System.out.println(build.describe());
     return build;
   }
 
+  /**
+   * Hopping-window counts per term ({@code <name>-window-counts-store}) feeding a bounded,
+   * incrementally updated trend ranking ({@code trending-<name>-store}).
+   * Windows advance by a quarter of their size; only the earliest (fullest) window
+   * containing a record is ranked, extrapolated by its elapsed fraction.
+   */
+  private static void addTrending(StreamsBuilder builder, KStream<String, String> terms, String name, Duration window) {
+    String countsStore = name + "-window-counts-store";
+    String rankingStore = "trending-" + name + "-store";
+    Duration advance = window.dividedBy(4);
+
+    // The ranking is kept in memory by TrendProcessor and written back per commit interval and on close
+    builder.addStateStore(Stores.keyValueStoreBuilder(
+        Stores.persistentKeyValueStore(rankingStore), Serdes.String(), Serdes.String()));
+
+    terms
+        .groupBy((key, term) -> term, Grouped.with(Serdes.String(), Serdes.String()))
+        .windowedBy(TimeWindows.ofSizeAndGrace(window, TREND_GRACE).advanceBy(advance))
+        .count(Materialized.<String, Long, WindowStore<Bytes, byte[]>>as(countsStore)
+            .withKeySerde(Serdes.String())
+            .withValueSerde(Serdes.Long())
+            // Current and previous window must both be retained
+            .withRetention(window.multipliedBy(2).plus(TREND_GRACE)))
+        .toStream()
+        .process(() -> new TrendProcessor(countsStore, rankingStore, window.toMillis(), advance.toMillis(),
+                TREND_CAPACITY),
+            countsStore, rankingStore);
+  }
+
   /**
    * Creates Kafka topics if they don't exist
    * @param adminProps Properties used to create AdminClient (bootstrap + security)
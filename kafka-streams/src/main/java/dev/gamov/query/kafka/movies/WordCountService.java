@@ -4,10 +4,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.QueryableStoreTypes;
 import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import io.javalin.Javalin;
 
@@ -34,5 +39,42 @@ public class WordCountService {
       ctx.contentType("application/json");
       ctx.result(MAPPER.writeValueAsString(Map.of("word", word, "count", count)));
     });
+
+    // Top-k trending title words (default) or genres: /trending?k=10&type=genres
+    // Served from the precomputed bounded ranking, one entry per partition, never a scan of the counts
+    app.get("/trending", ctx -> {
+      int k;
+      try {
+        k = Integer.parseInt(Objects.requireNonNullElse(ctx.queryParam("k"), "10"));
+      } catch (NumberFormatException e) {
+        k = -1;
+      }
+      String type = Objects.requireNonNullElse(ctx.queryParam("type"), "words");
+      String storeName = switch (type) {
+        case "words" -> "trending-title-words-store";
+        case "genres" -> "trending-genres-store";
+        default -> null;
+      };
+      if (storeName == null || k <= 0) {
+        ctx.status(400);
+        ctx.contentType("application/json");
+        ctx.result(MAPPER.writeValueAsString(Map.of("error", "Expected type=words|genres and a number k > 0")));
+        return;
+      }
+
+      ReadOnlyKeyValueStore<String, String> store =
+          streams.store(StoreQueryParameters.fromNameAndType(storeName, QueryableStoreTypes.keyValueStore()));
+      List<TrendRanking.Entry> entries = new ArrayList<>();
+      try (KeyValueIterator<String, String> it = store.all()) {
+        while (it.hasNext()) {
+          entries.addAll(TrendRanking.decode(it.next().value).top(k));
+        }
+      }
+      entries.sort(Comparator.comparingDouble(TrendRanking.Entry::score).reversed());
+
+      List<Map<String, Object>> result = entries.stream().limit(k).map(TrendRanking.Entry::toMap).toList();
+      ctx.contentType("application/json");
+      ctx.result(MAPPER.writeValueAsString(Map.of("type", type, "trending", result)));
+    });
   }
 }
\ No newline at end of file
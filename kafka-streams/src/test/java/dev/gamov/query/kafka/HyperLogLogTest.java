@@ -0,0 +1,48 @@
+package dev.gamov.query.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void testEstimateWithinErrorBound() {
+    byte[] sketch = HyperLogLog.newSketch();
+    int n = 200_000;
+    for (int i = 0; i < n; i++) {
+      HyperLogLog.add(sketch, "flight-" + i);
+    }
+    // ~1.15% standard error; allow 3 sigma
+    assertEquals(n, HyperLogLog.estimate(sketch), n * 0.035);
+    assertEquals(HyperLogLog.SIZE, sketch.length);
+  }
+
+  @Test
+  public void testSmallCardinalitiesAndDuplicates() {
+    byte[] sketch = HyperLogLog.newSketch();
+    assertEquals(0L, HyperLogLog.estimate(sketch));
+    assertTrue(HyperLogLog.add(sketch, "SFO"));
+    // Re-adding an item never changes a register, so no write-back is needed
+    assertFalse(HyperLogLog.add(sketch, "SFO"));
+    HyperLogLog.add(sketch, "JFK");
+    HyperLogLog.add(sketch, "LAX");
+    assertEquals(3L, HyperLogLog.estimate(sketch));
+  }
+
+  @Test
+  public void testMergeIsUnion() {
+    byte[] a = HyperLogLog.newSketch();
+    byte[] b = HyperLogLog.newSketch();
+    for (int i = 0; i < 50_000; i++) {
+      HyperLogLog.add(a, "k" + i);
+    }
+    for (int i = 25_000; i < 75_000; i++) {
+      HyperLogLog.add(b, "k" + i);
+    }
+    HyperLogLog.merge(a, b);
+    assertEquals(75_000, HyperLogLog.estimate(a), 75_000 * 0.035);
+  }
+}
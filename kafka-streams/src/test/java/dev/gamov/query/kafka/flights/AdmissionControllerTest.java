@@ -0,0 +1,106 @@
+package dev.gamov.query.kafka.flights;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdmissionControllerTest {
+
+  @Test
+  public void testQueueFullRejectsAndWaitTimesOut() throws Exception {
+    // limit 1, queue 1, wait 200ms
+    AdmissionController.Limiter limiter = new AdmissionController.Limiter(1, 1, 4, 1, 100, 200);
+
+    assertEquals(AdmissionController.Outcome.ADMITTED, limiter.acquire());
+
+    // Second request waits in the queue and times out since the slot is never released
+    AtomicReference<AdmissionController.Outcome> waited = new AtomicReference<>();
+    Thread waiter = new Thread(() -> {
+      try {
+        waited.set(limiter.acquire());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+    while ((int) limiter.stats().get("queued") < 1) {
+      Thread.onSpinWait();
+    }
+
+    // Queue already holds one waiter, so this one is rejected immediately
+    assertEquals(AdmissionController.Outcome.QUEUE_FULL, limiter.acquire());
+    waiter.join();
+    assertEquals(AdmissionController.Outcome.TIMED_OUT, waited.get());
+  }
+
+  @Test
+  public void testFreedSlotGoesToQueuedWaiterNotNewArrival() throws Exception {
+    // limit 1, queue 2, wait 200ms
+    AdmissionController.Limiter limiter = new AdmissionController.Limiter(1, 1, 1, 2, 100, 200);
+    assertEquals(AdmissionController.Outcome.ADMITTED, limiter.acquire());
+
+    AtomicReference<AdmissionController.Outcome> waited = new AtomicReference<>();
+    Thread waiter = new Thread(() -> {
+      try {
+        waited.set(limiter.acquire());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+    while ((int) limiter.stats().get("queued") < 1) {
+      Thread.onSpinWait();
+    }
+
+    // The slot frees up before the waiter wakes; a new arrival must still queue behind it
+    limiter.release(1);
+    assertEquals(AdmissionController.Outcome.TIMED_OUT, limiter.acquire());
+    waiter.join();
+    assertEquals(AdmissionController.Outcome.ADMITTED, waited.get());
+  }
+
+  @Test
+  public void testLimitAdaptsToLatency() throws Exception {
+    AdmissionController.Limiter limiter = new AdmissionController.Limiter(10, 2, 20, 0, 100, 0);
+
+    for (int i = 0; i < 20; i++) {
+      limiter.acquire();
+      limiter.release(500); // slower than target
+    }
+    assertEquals(2, limiter.limit());
+
+    for (int i = 0; i < 50; i++) {
+      limiter.acquire();
+      limiter.release(5); // well under target
+    }
+    assertTrue(limiter.limit() > 2);
+  }
+
+  @Test
+  public void testSlowPointLookupsThrottleRunningScansFirst() throws Exception {
+    AdmissionController admission = new AdmissionController();
+    AdmissionController.Limiter point = admission.limiter(AdmissionController.RouteClass.POINT);
+    AdmissionController.Limiter range = admission.limiter(AdmissionController.RouteClass.RANGE);
+    AdmissionController.Limiter fullScan = admission.limiter(AdmissionController.RouteClass.FULL_SCAN);
+    int pointLimit = point.limit();
+    int rangeLimit = range.limit();
+
+    // A full scan is running (no range scan) while a point lookup is slow
+    assertEquals(AdmissionController.Outcome.ADMITTED, fullScan.acquire());
+    assertEquals(AdmissionController.Outcome.ADMITTED, point.acquire());
+    admission.release(AdmissionController.RouteClass.POINT, 1_000);
+
+    assertEquals(pointLimit, point.limit());
+    assertEquals(rangeLimit, range.limit());
+    assertEquals(1, fullScan.limit());
+
+    // Once no scan is running a slow point lookup shrinks its own limit
+    admission.release(AdmissionController.RouteClass.FULL_SCAN, 1);
+    assertEquals(AdmissionController.Outcome.ADMITTED, point.acquire());
+    admission.release(AdmissionController.RouteClass.POINT, 1_000);
+    assertTrue(point.limit() < pointLimit);
+  }
+}
@@ -0,0 +1,111 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import io.confluent.developer.models.flight.Flight;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+
+import static dev.gamov.query.kafka.flights.FlightFixtures.flight;
+import static dev.gamov.query.kafka.flights.FlightFixtures.valueSerde;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactFlightSerdeTest {
+
+  // Earlier Flight layout for the evolved test format: same fields plus a gate the current schema dropped
+  private static final Schema FLIGHT_WITH_GATE = SchemaBuilder.record("Flight")
+      .namespace("io.confluent.developer.models.flight")
+      .fields()
+      .requiredString("flightNumber")
+      .requiredString("airline")
+      .requiredString("origin")
+      .requiredString("destination")
+      .requiredLong("scheduledDeparture")
+      .optionalLong("actualDeparture")
+      .requiredString("status")
+      .requiredString("gate")
+      .endRecord();
+
+  private final Flight scheduled = flight("AA100", "AA", "SFO", "JFK", 1000L, null, "SCHEDULED");
+  private final Flight departed = flight("AA100", "AA", "SFO", "JFK", 1000L, 1200L, "DELAYED");
+
+  @Test
+  public void testRoundTripIsSmallerThanWireFormat() {
+    SpecificAvroSerde<Flight> registry = valueSerde();
+    CompactFlightSerde compact = new CompactFlightSerde(CompactFlightSerde.Format.STORE, registry.deserializer());
+
+    for (Flight f : new Flight[]{scheduled, departed}) {
+      byte[] bytes = compact.serializer().serialize("flights-store", f);
+      assertEquals(CompactFlightSerde.Format.STORE.version, bytes[0]);
+      assertEquals(f, compact.deserializer().deserialize("flights-store", bytes));
+
+      // No magic byte + 4-byte schema id
+      byte[] wire = registry.serializer().serialize("flights", f);
+      assertTrue(bytes.length < wire.length);
+    }
+    assertNull(compact.serializer().serialize("flights-store", null));
+  }
+
+  @Test
+  public void testReadsLegacyWireFormat() {
+    SpecificAvroSerde<Flight> registry = valueSerde();
+    CompactFlightSerde compact = new CompactFlightSerde(CompactFlightSerde.Format.STORE, registry.deserializer());
+
+    byte[] wire = registry.serializer().serialize("flights", departed);
+    assertEquals(departed, compact.deserializer().deserialize("flights-store", wire));
+  }
+
+  @Test
+  public void testUnknownVersionRejected() {
+    CompactFlightSerde compact = new CompactFlightSerde(CompactFlightSerde.Format.STORE, null);
+    assertThrows(SerializationException.class,
+        () -> compact.deserializer().deserialize("flights-store", new byte[]{42, 0}));
+  }
+
+  @Test
+  public void testVersionsArePerFormat() throws IOException {
+    // A format that has moved on to version 2 and still reads its pinned version 1 layout
+    CompactFlightSerde evolved = new CompactFlightSerde("EVOLVED", (byte) 2,
+        Map.of((byte) 1, FLIGHT_WITH_GATE, (byte) 2, Flight.getClassSchema()), null);
+    CompactFlightSerde store = new CompactFlightSerde(CompactFlightSerde.Format.STORE, null);
+
+    assertEquals(departed, evolved.deserializer().deserialize("evolved", writeWithGate(departed, "B12")));
+    byte[] bytes = evolved.serializer().serialize("evolved", departed);
+    assertEquals(2, bytes[0]);
+    assertEquals(departed, evolved.deserializer().deserialize("evolved", bytes));
+    // STORE stays on version 1 and has no schema pinned for the other format's version 2
+    assertEquals(1, CompactFlightSerde.Format.STORE.version);
+    assertThrows(SerializationException.class, () -> store.deserializer().deserialize("flights-store", bytes));
+  }
+
+  /**
+   * Version 1 bytes of the evolved format, written with the older schema.
+   */
+  private static byte[] writeWithGate(Flight flight, String gate) throws IOException {
+    GenericRecord record = new GenericData.Record(FLIGHT_WITH_GATE);
+    for (Schema.Field field : Flight.getClassSchema().getFields()) {
+      record.put(field.name(), flight.get(field.name()));
+    }
+    record.put("gate", gate);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(1);
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
+    new GenericDatumWriter<GenericRecord>(FLIGHT_WITH_GATE).write(record, encoder);
+    encoder.flush();
+    return out.toByteArray();
+  }
+}
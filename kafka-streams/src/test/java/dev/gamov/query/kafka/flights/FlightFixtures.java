@@ -0,0 +1,68 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import io.confluent.developer.models.flight.Flight;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+
+/**
+ * Shared Flight builder, streams config and mock Schema Registry serdes for the flights tests.
+ */
+final class FlightFixtures {
+
+  static final String INPUT_TOPIC = "flights";
+
+  private FlightFixtures() {}
+
+  static Flight flight(
+      String flightNumber,
+      String airline,
+      String origin,
+      String destination,
+      long scheduledDeparture,
+      Long actualDeparture,
+      String status
+  ) {
+    Flight.Builder b = Flight.newBuilder();
+    b.setFlightNumber(flightNumber);
+    b.setAirline(airline);
+    b.setOrigin(origin);
+    b.setDestination(destination);
+    b.setScheduledDeparture(scheduledDeparture);
+    b.setActualDeparture(actualDeparture);
+    b.setStatus(status);
+    return b.build();
+  }
+
+  static Properties streamsProps(String applicationId) {
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+    props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass().getName());
+    return props;
+  }
+
+  // Configure mock schema registry for serdes
+  static Map<String, Object> serdeConfig() {
+    Map<String, Object> serdeConfig = new HashMap<>();
+    serdeConfig.put("schema.registry.url", "mock://flight-sr");
+    return serdeConfig;
+  }
+
+  static SpecificAvroSerde<Flight> valueSerde() {
+    SpecificAvroSerde<Flight> valueSerde = new SpecificAvroSerde<>();
+    valueSerde.configure(serdeConfig(), false);
+    return valueSerde;
+  }
+
+  static TestInputTopic<String, Flight> inputTopic(TopologyTestDriver driver) {
+    return driver.createInputTopic(INPUT_TOPIC, Serdes.String().serializer(), valueSerde().serializer());
+  }
+}
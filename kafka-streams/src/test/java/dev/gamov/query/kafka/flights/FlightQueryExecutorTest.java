@@ -0,0 +1,132 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.query.FailureReason;
+import org.apache.kafka.streams.query.QueryResult;
+import org.apache.kafka.streams.query.RangeQuery;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.confluent.developer.models.flight.Flight;
+
+import static dev.gamov.query.kafka.flights.FlightFixtures.flight;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlightQueryExecutorTest {
+
+  private FlightQueryExecutor executor;
+
+  @AfterEach
+  public void tearDown() {
+    if (executor != null) {
+      executor.close();
+    }
+  }
+
+  // Two hosted partitions of flights-store; partition 2 belongs to another sub-topology
+  private final Map<Integer, NavigableMap<String, Flight>> partitions = Map.of(
+      0, new TreeMap<>(Map.of(
+          "AA100", flight("AA100", "AA", "SFO", "JFK", 1000L, null, "DELAYED"),
+          "BA200", flight("BA200", "BA", "LHR", "ORD", 2000L, null, "DELAYED"))),
+      1, new TreeMap<>(Map.of(
+          "AA101", flight("AA101", "AA", "SFO", "JFK", 1000L, null, "ON_TIME"),
+          "AA102", flight("AA102", "AA", "LAX", "JFK", 1000L, null, "DELAYED"))));
+
+  private final Map<Integer, RangeQuery<String, Flight>> queried = new ConcurrentHashMap<>();
+
+  private QueryResult<KeyValueIterator<String, Flight>> query(RangeQuery<String, Flight> query, int partition,
+                                                              long delayPerRecordMs) {
+    queried.put(partition, query);
+    NavigableMap<String, Flight> data = partitions.get(partition);
+    if (data == null) {
+      return QueryResult.forFailure(FailureReason.NOT_PRESENT, "not hosted");
+    }
+    String from = query.getLowerBound().orElse("");
+    NavigableMap<String, Flight> range = query.getUpperBound()
+        .map(to -> data.subMap(from, true, to, true))
+        .orElse(data.tailMap(from, true));
+    return QueryResult.forResult(new SlowIterator(range.entrySet().iterator(), delayPerRecordMs));
+  }
+
+  @Test
+  public void testFansOutPerPartitionAndSkipsUnhosted() throws Exception {
+    executor = new FlightQueryExecutor(() -> Set.of(0, 1, 2), (q, p) -> query(q, p, 0L), 2);
+
+    Map<String, Object> result = executor.execute(FlightQuery.fromParams(Map.of(
+        "prefix", List.of("AA"),
+        "status", List.of("DELAYED"),
+        "groupBy", List.of("origin"))));
+
+    // Every partition is asked once with the pushed-down prefix range
+    assertEquals(Set.of(0, 1, 2), queried.keySet());
+    queried.values().forEach(q -> assertEquals("AA", q.getLowerBound().orElseThrow()));
+    assertEquals(Map.of("SFO", 1L, "LAX", 1L), result.get("groups"));
+    // BA200 is outside the key range and never scanned
+    assertEquals(3L, result.get("scanned"));
+    assertEquals(3, result.get("partitions"));
+    assertEquals(false, result.get("truncated"));
+  }
+
+  @Test
+  public void testTimeoutTruncatesSlowScans() throws Exception {
+    executor = new FlightQueryExecutor(() -> Set.of(0, 1), (q, p) -> query(q, p, 200L), 2);
+
+    Map<String, Object> result = executor.execute(FlightQuery.fromParams(Map.of(
+        "timeoutMs", List.of("100"),
+        "groupBy", List.of("origin"))));
+
+    assertTrue((Boolean) result.get("truncated"));
+    assertEquals("timeout", result.get("truncatedBy"));
+    assertTrue((Long) result.get("tookMs") < 2_000L);
+  }
+
+  /**
+   * Store iterator over a sorted map that takes a while to produce each record.
+   */
+  private static final class SlowIterator implements KeyValueIterator<String, Flight> {
+    private final Iterator<Map.Entry<String, Flight>> it;
+    private final long delayMs;
+
+    SlowIterator(Iterator<Map.Entry<String, Flight>> it, long delayMs) {
+      this.it = it;
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return it.hasNext();
+    }
+
+    @Override
+    public KeyValue<String, Flight> next() {
+      if (delayMs > 0) {
+        try {
+          Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      Map.Entry<String, Flight> e = it.next();
+      return KeyValue.pair(e.getKey(), e.getValue());
+    }
+
+    @Override
+    public String peekNextKey() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.streams.KeyValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import io.confluent.developer.models.flight.Flight;
+
+import static dev.gamov.query.kafka.flights.FlightFixtures.flight;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlightQueryTest {
+
+  private List<KeyValue<String, Flight>> flights() {
+    return List.of(
+        KeyValue.pair("AA100", flight("AA100", "AA", "SFO", "JFK", 1000L, null, "DELAYED")),
+        KeyValue.pair("AA101", flight("AA101", "AA", "SFO", "JFK", 1000L, null, "ON_TIME")),
+        KeyValue.pair("BA200", flight("BA200", "BA", "SFO", "JFK", 1000L, null, "DELAYED")),
+        KeyValue.pair("CA300", flight("CA300", "CA", "LAX", "JFK", 1000L, null, "DELAYED")),
+        KeyValue.pair("UA400", flight("UA400", "UA", "SFO", "JFK", 1000L, null, "DELAYED"))
+    );
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testFilterAndGroupBy() {
+    FlightQuery query = FlightQuery.fromParams(Map.of(
+        "origin", List.of("sfo"),
+        "status", List.of("DELAYED"),
+        "groupBy", List.of("airline")));
+    FlightQuery.State state = new FlightQuery.State(Long.MAX_VALUE);
+
+    query.scan(flights().iterator(), state);
+
+    Map<String, Long> groups = (Map<String, Long>) state.toResult(true, query.limit()).get("groups");
+    assertEquals(Map.of("AA", 1L, "BA", 1L, "UA", 1L), groups);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testLimitStopsScanEarlyAndProjects() {
+    FlightQuery query = FlightQuery.fromParams(Map.of(
+        "status", List.of("DELAYED"),
+        "select", List.of("flightNumber,origin"),
+        "limit", List.of("2")));
+    FlightQuery.State state = new FlightQuery.State(Long.MAX_VALUE);
+
+    query.scan(flights().iterator(), state);
+
+    Map<String, Object> result = state.toResult(false, query.limit());
+    List<Map<String, Object>> rows = (List<Map<String, Object>>) result.get("rows");
+    assertEquals(2, rows.size());
+    assertEquals(Map.of("flightNumber", "AA100", "origin", "SFO"), rows.get(0));
+    // Third record completes the limit, so the last two are never read
+    assertEquals(3L, result.get("scanned"));
+  }
+
+  @Test
+  public void testGroupByKeepsLargestGroupsUpToLimit() {
+    FlightQuery query = FlightQuery.fromParams(Map.of("groupBy", List.of("airline"), "limit", List.of("1")));
+    FlightQuery.State state = new FlightQuery.State(Long.MAX_VALUE);
+
+    query.scan(flights().iterator(), state);
+
+    // Grouping scans every row; the limit only caps the groups returned
+    Map<String, Object> result = state.toResult(true, query.limit());
+    assertEquals(Map.of("AA", 2L), result.get("groups"));
+    assertEquals(5L, result.get("scanned"));
+    assertTrue((Boolean) result.get("truncated"));
+    assertEquals("limit", result.get("truncatedBy"));
+  }
+
+  @Test
+  public void testScanBudgetTruncates() {
+    FlightQuery query = FlightQuery.fromParams(Map.of("maxScan", List.of("2"), "groupBy", List.of("origin")));
+    FlightQuery.State state = new FlightQuery.State(Long.MAX_VALUE);
+
+    query.scan(flights().iterator(), state);
+
+    Map<String, Object> result = state.toResult(true, query.limit());
+    assertTrue((Boolean) result.get("truncated"));
+    assertEquals("maxScan", result.get("truncatedBy"));
+  }
+
+  @Test
+  public void testUnknownFieldRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> FlightQuery.fromParams(Map.of("groupBy", List.of("gate"))));
+  }
+
+  @Test
+  public void testUnknownParameterRejected() {
+    // Misspelt filter must not silently match every flight
+    assertThrows(IllegalArgumentException.class,
+        () -> FlightQuery.fromParams(Map.of("orign", List.of("SFO"))));
+  }
+
+  @Test
+  public void testEmptyBoundsAreNotAKeyRange() {
+    assertFalse(FlightQuery.fromParams(Map.of("from", List.of(""))).hasKeyRange());
+    assertFalse(FlightQuery.fromParams(Map.of("prefix", List.of(""), "to", List.of(""))).hasKeyRange());
+    assertTrue(FlightQuery.fromParams(Map.of("prefix", List.of("AA"))).hasKeyRange());
+    assertTrue(FlightQuery.fromParams(Map.of("to", List.of("BA"))).hasKeyRange());
+  }
+}
@@ -0,0 +1,96 @@
+package dev.gamov.query.kafka.flights;
+
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.errors.StreamsException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import io.confluent.developer.models.flight.Flight;
+
+import static dev.gamov.query.kafka.flights.FlightFixtures.INPUT_TOPIC;
+import static dev.gamov.query.kafka.flights.FlightFixtures.flight;
+import static dev.gamov.query.kafka.flights.FlightFixtures.serdeConfig;
+import static dev.gamov.query.kafka.flights.FlightFixtures.streamsProps;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlightSqlSinkTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testSinkUpsertsLatestFlightState() throws Exception {
+    String url = "jdbc:sqlite:" + tempDir.resolve("flights.db");
+
+    FlightSqlSink sink = new FlightSqlSink(url, 100, 2);
+    sink.start();
+    try (TopologyTestDriver driver = new TopologyTestDriver(
+        FlightStreamsApplication.createTopology(INPUT_TOPIC, serdeConfig(), sink), streamsProps("flights-sql-sink-test"))) {
+      TestInputTopic<String, Flight> input = FlightFixtures.inputTopic(driver);
+
+      input.pipeInput(null, flight("AA100", "AA", "SFO", "JFK", 0L, null, "SCHEDULED"));
+      input.pipeInput(null, flight("BA200", "AA", "LHR", "JFK", 0L, null, "BOARDING"));
+      input.pipeInput(null, flight("AA100", "AA", "SFO", "JFK", 0L, 60_000L, "DELAYED"));
+
+      // Every pipeInput commits, and each commit flushes the sink before returning
+      try (Connection conn = DriverManager.getConnection(url);
+           Statement st = conn.createStatement();
+           ResultSet rs = st.executeQuery("SELECT status FROM flights WHERE flight_number = 'AA100'")) {
+        assertTrue(rs.next());
+        assertEquals("DELAYED", rs.getString(1));
+      }
+    }
+    sink.close();
+
+    try (Connection conn = DriverManager.getConnection(url);
+         Statement st = conn.createStatement();
+         ResultSet rs = st.executeQuery(
+             "SELECT flight_number, departure_airport, actual_departure, status FROM flights ORDER BY flight_number")) {
+      assertTrue(rs.next());
+      assertEquals("AA100", rs.getString(1));
+      assertEquals("SFO", rs.getString(2));
+      assertEquals("1970-01-01 00:01:00", rs.getString(3));
+      assertEquals("DELAYED", rs.getString(4));
+
+      assertTrue(rs.next());
+      assertEquals("BA200", rs.getString(1));
+      assertNull(rs.getString(3));
+      assertEquals("BOARDING", rs.getString(4));
+
+      assertFalse(rs.next());
+    }
+  }
+
+  @Test
+  public void testFailedWritesFailTheSinkInsteadOfDroppingChanges() throws Exception {
+    String url = "jdbc:sqlite:" + tempDir.resolve("flights.db");
+    FlightSqlSink sink = new FlightSqlSink(url, 100, 100);
+    sink.start();
+    try {
+      // Every upsert fails from now on
+      try (Connection conn = DriverManager.getConnection(url);
+           Statement st = conn.createStatement()) {
+        st.execute("DROP TABLE flights");
+      }
+
+      sink.enqueue("AA100", flight("AA100", "AA", "SFO", "JFK", 0L, null, "SCHEDULED"), 0L);
+      // Retries are exhausted, so the commit fails instead of running ahead of SQL
+      assertThrows(StreamsException.class, sink::flush);
+      assertThrows(StreamsException.class,
+          () -> sink.enqueue("BA200", flight("BA200", "AA", "LHR", "JFK", 0L, null, "BOARDING"), 0L));
+    } finally {
+      sink.close();
+    }
+  }
+}
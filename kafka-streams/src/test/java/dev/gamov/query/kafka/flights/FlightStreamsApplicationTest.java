@@ -6,19 +6,24 @@ import org.apache.kafka.streams.TestInputTopic;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.TopologyTestDriver;
 import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.WindowStore;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
+import dev.gamov.query.kafka.HyperLogLog;
 import io.confluent.developer.models.flight.Flight;
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FlightStreamsApplicationTest {
 
@@ -117,4 +122,61 @@ public class FlightStreamsApplicationTest {
     assertEquals(0L, delayedStore.get("SFO"));
     assertEquals(1L, delayedStore.get("LAX"));
   }
+
+  @Test
+  public void testDailyDistinctCounts() {
+    Instant day1 = Instant.parse("2025-01-01T10:00:00Z");
+    Instant day2 = Instant.parse("2025-01-02T10:00:00Z");
+
+    inputTopic.pipeInput(null, flight("AA100", "AA", "SFO", "JFK", 1000L, null, "SCHEDULED"), day1);
+    inputTopic.pipeInput(null, flight("AA100", "AA", "SFO", "JFK", 1000L, 1200L, "DELAYED"), day1);
+    inputTopic.pipeInput(null, flight("AA200", "AA", "SFO", "ORD", 2000L, null, "SCHEDULED"), day1);
+    inputTopic.pipeInput(null, flight("AA300", "AA", "SFO", "JFK", 3000L, null, "SCHEDULED"), day2);
+
+    WindowStore<String, byte[]> byAirline = testDriver.getWindowStore("unique-flights-by-airline-store");
+    WindowStore<String, byte[]> byOrigin = testDriver.getWindowStore("unique-destinations-by-origin-store");
+
+    long start1 = DailyDistinctCountProcessor.dayStart(day1.toEpochMilli());
+    long start2 = DailyDistinctCountProcessor.dayStart(day2.toEpochMilli());
+    assertEquals(2L, HyperLogLog.estimate(byAirline.fetch("AA", start1)));
+    assertEquals(1L, HyperLogLog.estimate(byAirline.fetch("AA", start2)));
+    assertEquals(2L, HyperLogLog.estimate(byOrigin.fetch("SFO", start1)));
+    assertEquals(1L, HyperLogLog.estimate(byOrigin.fetch("SFO", start2)));
+  }
+
+  @Test
+  public void testSaltedDelayedByOriginAggregationIsExact() {
+    // SFO configured hot; any origin above half of a 4-update window detected hot as well
+    SaltedAggregation skew = new SaltedAggregation(4, Set.of("SFO"), 0.5, 4);
+    checkSaltedAggregation(skew);
+  }
+
+  @Test
+  public void testSaltedAggregationWithAutoDetectedHotKeys() {
+    SaltedAggregation skew = new SaltedAggregation(4, Set.of(), 0.5, 4);
+    checkSaltedAggregation(skew);
+  }
+
+  private void checkSaltedAggregation(SaltedAggregation skew) {
+    try (TopologyTestDriver skewDriver = new TopologyTestDriver(
+        FlightStreamsApplication.createTopology(FlightFixtures.INPUT_TOPIC, FlightFixtures.serdeConfig(), null, skew),
+        FlightFixtures.streamsProps("flights-skew-test"))) {
+      TestInputTopic<String, Flight> input = FlightFixtures.inputTopic(skewDriver);
+
+      // Several SFO flights, some delayed and then recovered, so retractions cross sub-keys
+      for (int i = 0; i < 10; i++) {
+        input.pipeInput(null, flight("AA" + i, "AA", "SFO", "JFK", 1000L, null, "SCHEDULED"));
+        input.pipeInput(null, flight("AA" + i, "AA", "SFO", "JFK", 1000L, 1200L, "DELAYED"));
+      }
+      for (int i = 0; i < 4; i++) {
+        input.pipeInput(null, flight("AA" + i, "AA", "SFO", "JFK", 1000L, 1200L, "DEPARTED"));
+      }
+      input.pipeInput(null, flight("CA300", "CA", "LAX", "SEA", 3000L, 3100L, "DELAYED"));
+
+      KeyValueStore<String, Long> delayedStore = skewDriver.getKeyValueStore("delayed-by-origin-store");
+      assertEquals(6L, delayedStore.get("SFO"));
+      assertEquals(1L, delayedStore.get("LAX"));
+      assertTrue(skew.isHot("SFO"));
+    }
+  }
 }
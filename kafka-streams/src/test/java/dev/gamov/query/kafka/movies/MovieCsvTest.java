@@ -0,0 +1,38 @@
+package dev.gamov.query.kafka.movies;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MovieCsvTest {
+
+  @Test
+  public void testQuotedTitleWithCommas() {
+    MovieCsv.Movie movie = MovieCsv.parse("11,\"American President, The (1995)\",Comedy|Drama|Romance");
+
+    assertEquals("11", movie.movieId());
+    assertEquals("American President, The (1995)", movie.title());
+    assertEquals(List.of("Comedy", "Drama", "Romance"), movie.genres());
+    // Year suffix and stop words are dropped
+    assertEquals(List.of("american", "president"), movie.titleWords());
+  }
+
+  @Test
+  public void testEscapedQuotesAndNoGenres() {
+    MovieCsv.Movie movie = MovieCsv.parse("5,\"Say \"\"Hello\"\" (2001)\",(no genres listed)");
+
+    assertEquals("Say \"Hello\" (2001)", movie.title());
+    assertEquals(List.of(), movie.genres());
+    assertEquals(List.of("say", "hello"), movie.titleWords());
+  }
+
+  @Test
+  public void testHeaderAndMalformedLinesSkipped() {
+    assertNull(MovieCsv.parse("movieId,title,genres"));
+    assertNull(MovieCsv.parse("Hello Kafka Streams"));
+    assertNull(MovieCsv.parse("1,\"Unterminated (1995),Comedy"));
+  }
+}
@@ -12,11 +12,15 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class WordCountApplicationTest {
 
@@ -75,4 +79,75 @@ public class WordCountApplicationTest {
     assertEquals(2L, keyValueStore.get("kafka"));
     assertEquals(2L, keyValueStore.get("streams"));
   }
+
+  @Test
+  public void testTrendingRankingFromCsv() {
+    Instant previousWindow = Instant.parse("2025-01-01T10:05:00Z");
+    Instant currentWindow = Instant.parse("2025-01-01T11:05:00Z");
+
+    inputTopic.pipeInput(null, "1,Toy Story (1995),Adventure|Animation|Children", previousWindow);
+    inputTopic.pipeInput(null, "2,\"Story, The (1996)\",Drama", currentWindow);
+    inputTopic.pipeInput(null, "3,Another Story (1997),Drama|Comedy", currentWindow);
+    inputTopic.pipeInput(null, "4,Toy Soldiers (1991),Drama", currentWindow);
+    // Rankings are written back to their stores once per commit interval
+    testDriver.advanceWallClockTime(Duration.ofMinutes(1));
+
+    ReadOnlyKeyValueStore<String, String> words = testDriver.getKeyValueStore("trending-title-words-store");
+    List<TrendRanking.Entry> topWords = TrendRanking.decode(words.get(TrendProcessor.RANKING_KEY)).top(10);
+    // "story": 2 now vs 1 in the previous hour; "toy": 1 vs 1
+    TrendRanking.Entry story = topWords.stream().filter(e -> e.term().equals("story")).findFirst().orElseThrow();
+    assertEquals(2L, story.current());
+    assertEquals(1L, story.previous());
+
+    ReadOnlyKeyValueStore<String, String> genres = testDriver.getKeyValueStore("trending-genres-store");
+    TrendRanking.Entry top = TrendRanking.decode(genres.get(TrendProcessor.RANKING_KEY)).top(1).get(0);
+    assertEquals("Drama", top.term());
+    assertEquals(3L, top.current());
+    assertEquals(0L, top.previous());
+  }
+
+  @Test
+  public void testSteadyTermIsNotPenalisedAfterWindowBoundary() {
+    // One "Heat" title every 15 minutes, the last one just after a window boundary
+    Instant start = Instant.parse("2025-01-01T10:00:00Z");
+    for (int i = 0; i < 8; i++) {
+      inputTopic.pipeInput(null, i + ",Heat (1995),Action", start.plus(Duration.ofMinutes(15L * i)));
+    }
+    inputTopic.pipeInput(null, "8,Heat (1995),Action", Instant.parse("2025-01-01T12:01:00Z"));
+    testDriver.advanceWallClockTime(Duration.ofMinutes(1));
+
+    ReadOnlyKeyValueStore<String, String> words = testDriver.getKeyValueStore("trending-title-words-store");
+    TrendRanking.Entry heat = TrendRanking.decode(words.get(TrendProcessor.RANKING_KEY)).top(1).get(0);
+    // Ranked on the fullest window [11:15, 12:15), not the one that only just started at 12:00
+    assertEquals("heat", heat.term());
+    assertEquals(Instant.parse("2025-01-01T11:15:00Z").toEpochMilli(), heat.windowStart());
+    assertEquals(4L, heat.current());
+    assertEquals(4L, heat.previous());
+    assertTrue(heat.score() >= 0.0);
+  }
+
+  @Test
+  public void testRankingIsWrittenOnClose() {
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "close-test");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+    props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass().getName());
+    props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass().getName());
+
+    TopologyTestDriver driver = new TopologyTestDriver(WordCountApplication.createTopology("movies", "counts"), props);
+    TestInputTopic<String, String> movies =
+        driver.createInputTopic("movies", Serdes.String().serializer(), Serdes.String().serializer());
+    TestOutputTopic<String, String> rankingChangelog = driver.createOutputTopic(
+        "close-test-trending-genres-store-changelog", Serdes.String().deserializer(), Serdes.String().deserializer());
+
+    movies.pipeInput(null, "1,Heat (1995),Action", Instant.parse("2025-01-01T10:00:00Z"));
+    // No wall-clock time has passed, so the once-per-commit-interval write has not run
+    assertTrue(rankingChangelog.isEmpty());
+
+    // Closing suspends the task, which closes the processors before the final commit
+    driver.close();
+    TrendRanking.Entry top = TrendRanking.decode(rankingChangelog.readValue()).top(1).get(0);
+    assertEquals("Action", top.term());
+    assertEquals(1L, top.current());
+  }
 }
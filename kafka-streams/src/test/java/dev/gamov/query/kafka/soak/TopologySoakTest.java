@@ -0,0 +1,333 @@
+package dev.gamov.query.kafka.soak;
+
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.test.TestRecord;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import dev.gamov.query.kafka.flights.CompactFlightSerde;
+import dev.gamov.query.kafka.flights.FlightStreamsApplication;
+import dev.gamov.query.kafka.movies.WordCountApplication;
+import io.confluent.developer.models.flight.Flight;
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Soak-style regression suite: pushes a large number of synthetic records through
+ * both createTopology methods on TopologyTestDriver and compares throughput,
+ * retained heap, state store size and changelog volume (in total and per store)
+ * against src/test/resources/soak-baselines.properties.
+ * <p>
+ * Excluded from {@code test}; run with {@code ./gradlew soakTest}. Measured values
+ * are written to build/soak/&lt;topology&gt;.properties so baselines can be refreshed
+ * by copying them over. Baselines only gate a run with the record count they were
+ * measured at ({@code soak.records} in the baselines file); other runs just report.
+ * <p>
+ * TopologyTestDriver commits, and so flushes every RocksDB store, after each input
+ * record. Throughput is therefore far below a deployment's and bound by the state
+ * directory's disk ({@code -Psoak.stateDir} can point it at tmpfs); it is only
+ * comparable between runs on the same machine.
+ */
+@Tag("soak")
+public class TopologySoakTest {
+
+  private static final long RECORDS = Long.getLong("soak.records", 20_000L);
+  private static final double TOLERANCE = Double.parseDouble(System.getProperty("soak.tolerance", "0.2"));
+  private static final String RESULTS_DIR = System.getProperty("soak.resultsDir", "build/soak");
+  private static final String STATE_DIR = System.getProperty("soak.stateDir", System.getProperty("java.io.tmpdir"));
+
+  // Drain captured output every N input records so the driver does not buffer millions of records
+  private static final int DRAIN_EVERY = 10_000;
+  // Wall-clock time advanced per drain, so commit-interval punctuators fire as they would in a deployment
+  private static final Duration COMMIT_INTERVAL = Duration.ofSeconds(30);
+
+  private static final String[] AIRPORTS = {
+      "ATL", "ORD", "DFW", "DEN", "LAX", "JFK", "SFO", "SEA", "LAS", "MCO",
+      "CLT", "PHX", "MIA", "IAH", "BOS", "MSP", "DTW", "PHL", "LGA", "EWR"
+  };
+  private static final String[] AIRLINES = {"AA", "DL", "UA", "WN", "B6", "AS", "NK", "F9"};
+  private static final String[] STATUSES = {"SCHEDULED", "BOARDING", "DELAYED", "DEPARTED", "ON_TIME"};
+  private static final String[] GENRES = {
+      "Action", "Adventure", "Animation", "Children", "Comedy", "Crime", "Documentary", "Drama", "Fantasy",
+      "Film-Noir", "Horror", "IMAX", "Musical", "Mystery", "Romance", "Sci-Fi", "Thriller", "War", "Western"
+  };
+  private static final int FLIGHT_KEYS = 10_000;
+  private static final int MOVIE_IDS = 10_000;
+  private static final int VOCABULARY = 2_000;
+
+  private static Properties baselines;
+
+  @BeforeAll
+  public static void loadBaselines() throws IOException {
+    baselines = new Properties();
+    try (InputStream in = TopologySoakTest.class.getResourceAsStream("/soak-baselines.properties")) {
+      if (in != null) baselines.load(in);
+    }
+    // Per-record logging would dominate the measurement
+    ((Logger) LoggerFactory.getLogger(WordCountApplication.class)).setLevel(Level.WARN);
+    ((Logger) LoggerFactory.getLogger(FlightStreamsApplication.class)).setLevel(Level.WARN);
+    ((Logger) LoggerFactory.getLogger("org.apache.kafka")).setLevel(Level.WARN);
+  }
+
+  @Test
+  public void flightsTopologySoak() throws IOException {
+    Map<String, Object> serdeConfig = new HashMap<>();
+    serdeConfig.put("schema.registry.url", "mock://flight-soak-sr");
+    SpecificAvroSerde<Flight> valueSerde = new SpecificAvroSerde<>();
+    valueSerde.configure(serdeConfig, false);
+
+    Random random = new Random(42);
+    try (TopologyTestDriver driver = new TopologyTestDriver(
+        FlightStreamsApplication.createTopology("flights", serdeConfig), props("flights-soak"))) {
+      TestInputTopic<String, Flight> input =
+          driver.createInputTopic("flights", Serdes.String().serializer(), valueSerde.serializer());
+
+      Map<String, Double> metrics = run(driver, "flights-soak", () -> {
+        int n = random.nextInt(FLIGHT_KEYS);
+        String airline = AIRLINES[n % AIRLINES.length];
+        long scheduled = 1_700_000_000_000L + n * 60_000L;
+        String status = STATUSES[random.nextInt(STATUSES.length)];
+        Flight flight = Flight.newBuilder()
+            .setFlightNumber(airline + n)
+            .setAirline(airline)
+            .setOrigin(AIRPORTS[n % AIRPORTS.length])
+            .setDestination(AIRPORTS[(n / AIRPORTS.length) % AIRPORTS.length])
+            .setScheduledDeparture(scheduled)
+            .setActualDeparture("DEPARTED".equals(status) ? scheduled + random.nextInt(3_600_000) : null)
+            .setStatus(status)
+            .build();
+        input.pipeInput(null, flight);
+      });
+
+      CompactFlightSerde storeSerde = new CompactFlightSerde(CompactFlightSerde.Format.STORE, null);
+      metrics.put("storeBytes.flights-store", (double) storeBytes(driver.getKeyValueStore("flights-store"),
+          (Flight v) -> storeSerde.serializer().serialize("flights-store", v).length));
+      metrics.put("storeBytes.delayed-by-origin-store", (double) storeBytes(
+          driver.getKeyValueStore("delayed-by-origin-store"), (Long v) -> Long.BYTES));
+      metrics.put("storeBytes.unique-flights-by-airline-store",
+          (double) windowStoreBytes(driver.getWindowStore("unique-flights-by-airline-store"), (byte[] v) -> v.length));
+      metrics.put("storeBytes.unique-destinations-by-origin-store",
+          (double) windowStoreBytes(driver.getWindowStore("unique-destinations-by-origin-store"), (byte[] v) -> v.length));
+
+      report("flights", metrics);
+    }
+  }
+
+  @Test
+  public void wordCountTopologySoak() throws IOException {
+    Random random = new Random(42);
+    String[] vocabulary = new String[VOCABULARY];
+    for (int i = 0; i < VOCABULARY; i++) {
+      vocabulary[i] = "word" + Integer.toString(i, 36);
+    }
+
+    Properties props = props("wordcount-soak");
+    props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass().getName());
+    try (TopologyTestDriver driver = new TopologyTestDriver(
+        WordCountApplication.createTopology("movies", "movies-out"), props)) {
+      TestInputTopic<String, String> input =
+          driver.createInputTopic("movies", Serdes.String().serializer(), Serdes.String().serializer());
+
+      // movies.csv lines (movieId,title,genres), one per second of event time so the trend windows roll
+      StringBuilder line = new StringBuilder();
+      Instant[] eventTime = {Instant.parse("2025-01-01T00:00:00Z")};
+      Map<String, Double> metrics = run(driver, "wordcount-soak", () -> {
+        line.setLength(0);
+        line.append(random.nextInt(MOVIE_IDS)).append(',');
+        // Some titles carry a comma and are quoted, as in movies.csv
+        boolean quoted = random.nextInt(10) == 0;
+        if (quoted) line.append('"');
+        int words = 1 + random.nextInt(5);
+        for (int i = 0; i < words; i++) {
+          if (i > 0) line.append(quoted && i == 1 ? ", " : " ");
+          line.append(vocabulary[random.nextInt(VOCABULARY)]);
+        }
+        line.append(" (").append(1920 + random.nextInt(100)).append(')');
+        if (quoted) line.append('"');
+        line.append(',');
+        int genres = 1 + random.nextInt(3);
+        for (int i = 0; i < genres; i++) {
+          if (i > 0) line.append('|');
+          line.append(GENRES[random.nextInt(GENRES.length)]);
+        }
+        eventTime[0] = eventTime[0].plusSeconds(1);
+        input.pipeInput(null, line.toString(), eventTime[0]);
+      });
+
+      metrics.put("storeBytes.word-counts-store", (double) storeBytes(
+          driver.getKeyValueStore("word-counts-store"), (Long v) -> Long.BYTES));
+      for (String name : new String[]{"title-words", "genres"}) {
+        metrics.put("storeBytes." + name + "-window-counts-store", (double) windowStoreBytes(
+            driver.getWindowStore(name + "-window-counts-store"), (Long v) -> Long.BYTES));
+        metrics.put("storeBytes.trending-" + name + "-store", (double) storeBytes(
+            driver.getKeyValueStore("trending-" + name + "-store"),
+            (String v) -> v.getBytes(StandardCharsets.UTF_8).length));
+      }
+
+      report("wordcount", metrics);
+    }
+  }
+
+  private static Properties props(String applicationId) throws IOException {
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+    // Fresh stores per run: ones left behind by an aborted run would inflate the store sizes
+    Path stateRoot = Files.createDirectories(Path.of(STATE_DIR));
+    props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory(stateRoot, applicationId).toString());
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+    props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass().getName());
+    return props;
+  }
+
+  /**
+   * Pipe RECORDS records, draining every produced topic as raw bytes along the way.
+   * Returns throughput, retained heap and changelog / repartition volume per input record,
+   * with the changelog volume also broken down per store.
+   */
+  private static Map<String, Double> run(TopologyTestDriver driver, String applicationId, Runnable pipeOne) {
+    Map<String, TestOutputTopic<byte[], byte[]>> outputs = new HashMap<>();
+    Map<String, Long> changelogBytesByStore = new TreeMap<>();
+    long[] changelogBytes = {0L};
+    long[] repartitionBytes = {0L};
+
+    Runnable drain = () -> {
+      for (String topic : driver.producedTopicNames()) {
+        TestOutputTopic<byte[], byte[]> out = outputs.computeIfAbsent(topic, t ->
+            driver.createOutputTopic(t, new ByteArrayDeserializer(), new ByteArrayDeserializer()));
+        for (TestRecord<byte[], byte[]> r : out.readRecordsToList()) {
+          long size = (r.key() == null ? 0 : r.key().length) + (r.value() == null ? 0 : r.value().length);
+          if (topic.endsWith("-changelog")) {
+            changelogBytes[0] += size;
+            String store = topic.substring(applicationId.length() + 1, topic.length() - "-changelog".length());
+            changelogBytesByStore.merge(store, size, Long::sum);
+          } else if (topic.endsWith("-repartition")) {
+            repartitionBytes[0] += size;
+          }
+        }
+      }
+    };
+
+    long start = System.nanoTime();
+    for (long i = 1; i <= RECORDS; i++) {
+      pipeOne.run();
+      if (i % DRAIN_EVERY == 0) {
+        driver.advanceWallClockTime(COMMIT_INTERVAL);
+        drain.run();
+      }
+    }
+    drain.run();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    System.gc();
+    long usedHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+    Map<String, Double> metrics = new LinkedHashMap<>();
+    metrics.put("recordsPerSec", RECORDS / seconds);
+    metrics.put("retainedHeapMb", usedHeap / (1024.0 * 1024.0));
+    metrics.put("changelogBytesPerRecord", changelogBytes[0] / (double) RECORDS);
+    metrics.put("repartitionBytesPerRecord", repartitionBytes[0] / (double) RECORDS);
+    changelogBytesByStore.forEach((store, bytes) ->
+        metrics.put("changelogBytesPerRecord." + store, bytes / (double) RECORDS));
+    return metrics;
+  }
+
+  /**
+   * Serialized key + value bytes held in a store (excludes RocksDB overhead, so it is deterministic).
+   */
+  private static <V> long storeBytes(KeyValueStore<String, V> store, ToLongFunction<V> valueSize) {
+    long bytes = 0L;
+    try (KeyValueIterator<String, V> it = store.all()) {
+      while (it.hasNext()) {
+        KeyValue<String, V> kv = it.next();
+        bytes += kv.key.getBytes(StandardCharsets.UTF_8).length + valueSize.applyAsLong(kv.value);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Serialized key + value bytes held in a window store (window start/seq overhead excluded).
+   */
+  private static <V> long windowStoreBytes(WindowStore<String, V> store, ToLongFunction<V> valueSize) {
+    long bytes = 0L;
+    try (KeyValueIterator<Windowed<String>, V> it = store.all()) {
+      while (it.hasNext()) {
+        KeyValue<Windowed<String>, V> kv = it.next();
+        bytes += kv.key.key().getBytes(StandardCharsets.UTF_8).length + valueSize.applyAsLong(kv.value);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Write measured metrics to the results dir and fail on any metric past its baseline.
+   * Baseline keys are {@code <topology>.<metric>.min} or {@code <topology>.<metric>.max}.
+   */
+  private static void report(String name, Map<String, Double> metrics) throws IOException {
+    Properties measured = new Properties();
+    List<String> failures = new ArrayList<>();
+    String baselineRecords = baselines.getProperty("soak.records");
+    boolean gated = baselineRecords != null && Long.parseLong(baselineRecords) == RECORDS;
+    if (!gated) {
+      System.out.printf("[soak] baselines are for %s records, this run has %d: reporting only%n",
+          baselineRecords, RECORDS);
+    }
+    for (Map.Entry<String, Double> m : metrics.entrySet()) {
+      double actual = m.getValue();
+      measured.setProperty(name + "." + m.getKey(), String.format("%.2f", actual));
+      System.out.printf("[soak] %s %s = %.2f%n", name, m.getKey(), actual);
+      if (!gated) continue;
+
+      String min = baselines.getProperty(name + "." + m.getKey() + ".min");
+      if (min != null && actual < Double.parseDouble(min) * (1 - TOLERANCE)) {
+        failures.add(String.format("%s %s = %.2f below baseline min %s", name, m.getKey(), actual, min));
+      }
+      String max = baselines.getProperty(name + "." + m.getKey() + ".max");
+      if (max != null && actual > Double.parseDouble(max) * (1 + TOLERANCE)) {
+        failures.add(String.format("%s %s = %.2f above baseline max %s", name, m.getKey(), actual, max));
+      }
+    }
+
+    Path dir = Path.of(RESULTS_DIR);
+    Files.createDirectories(dir);
+    try (OutputStream out = Files.newOutputStream(dir.resolve(name + ".properties"))) {
+      measured.store(out, "soak results for " + RECORDS + " records");
+    }
+
+    assertTrue(failures.isEmpty(), String.join("\n", failures));
+  }
+}